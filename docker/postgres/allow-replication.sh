@@ -0,0 +1,3 @@
+#!/bin/sh
+# Runs once, when the primary database is initialized: lets the replica stream the WAL
+echo "host replication all all scram-sha-256" >> "$PGDATA/pg_hba.conf"
@@ -0,0 +1,211 @@
+package com.kaluzny.loadtest;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Closed-loop load generator for the Automobile API.
+ * <p>
+ * Every worker picks an operation from the configured mix, sends it with a token of one of the
+ * simulated users and records the latency. Samples taken during the warm-up are dropped.
+ * Run the app with the {@code loadtest} profile first, see the README.
+ */
+public class LoadTest {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("base-url", "http://localhost:8080/demo");
+        DEFAULTS.put("duration", "60");
+        DEFAULTS.put("warmup", "10");
+        DEFAULTS.put("concurrency", "32");
+        DEFAULTS.put("users", "8");
+        DEFAULTS.put("mix", "create=20,get=45,color=15,prefix=15,delete=5");
+        DEFAULTS.put("colors", "Red,Green,Blue,Black,White,Silver");
+        DEFAULTS.put("secret", "automobile-load-test-secret-0123456789");
+    }
+
+    private static final int ID_POOL_SIZE = 10_000;
+
+    private final String baseUrl;
+    private final List<String> colors;
+    private final Operation[] weightedOperations;
+    private final List<String> tokens = new ArrayList<>();
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final AtomicReferenceArray<String> ids = new AtomicReferenceArray<>(ID_POOL_SIZE);
+    private final AtomicLong createdIds = new AtomicLong();
+
+    LoadTest(Map<String, String> options) {
+        this.baseUrl = options.get("base-url");
+        this.colors = List.of(options.get("colors").split(","));
+        this.weightedOperations = parseMix(options.get("mix"));
+
+        TokenMinter minter = new TokenMinter(options.get("secret"));
+        Instant expiresAt = Instant.now().plus(Duration.ofHours(12));
+        int users = Integer.parseInt(options.get("users"));
+        for (int i = 0; i < users; i++) {
+            tokens.add(minter.mint("load-user-" + i, expiresAt));
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parseArgs(args, DEFAULTS);
+        int concurrency = Integer.parseInt(options.get("concurrency"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.get("warmup")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.get("duration")));
+
+        System.out.printf("Load test against %s: %d workers, %ds warm-up, %ds measured, mix %s%n",
+                options.get("base-url"), concurrency, warmup.toSeconds(), duration.toSeconds(), options.get("mix"));
+
+        new LoadTest(options).run(concurrency, warmup, duration);
+    }
+
+    void run(int concurrency, Duration warmup, Duration duration) throws InterruptedException {
+        long measureFrom = System.nanoTime() + warmup.toNanos();
+        long stopAt = measureFrom + duration.toNanos();
+        List<Recorder> recorders = new ArrayList<>();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Recorder recorder = new Recorder();
+            recorders.add(recorder);
+            workers.execute(() -> work(recorder, measureFrom, stopAt));
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(duration.plus(warmup).toSeconds() + 60, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+
+        Map<Operation, Recorder.Samples> merged = new EnumMap<>(Operation.class);
+        recorders.forEach(recorder -> recorder.mergeInto(merged));
+        report(merged, duration);
+    }
+
+    private void work(Recorder recorder, long measureFrom, long stopAt) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now;
+        while ((now = System.nanoTime()) < stopAt) {
+            Operation operation = weightedOperations[random.nextInt(weightedOperations.length)];
+            String id = null;
+            if (operation.needsId()) {
+                id = randomId(random);
+                if (id == null) {
+                    operation = Operation.CREATE;
+                }
+            }
+
+            HttpRequest request = operation.request(baseUrl, id, colors)
+                    .header("Authorization", "Bearer " + tokens.get(random.nextInt(tokens.size())))
+                    .timeout(Duration.ofSeconds(30))
+                    .build();
+            int status;
+            long start = System.nanoTime();
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                status = response.statusCode();
+                if (operation == Operation.CREATE && status / 100 == 2) {
+                    rememberId(response.body());
+                }
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long latency = System.nanoTime() - start;
+            if (now >= measureFrom) {
+                recorder.record(operation, status, latency);
+            }
+        }
+    }
+
+    private void rememberId(String body) {
+        String id = body.replace("\"", "").trim();
+        if (!id.isEmpty()) {
+            ids.set((int) (createdIds.getAndIncrement() % ID_POOL_SIZE), id);
+        }
+    }
+
+    private String randomId(ThreadLocalRandom random) {
+        long created = Math.min(createdIds.get(), ID_POOL_SIZE);
+        return created == 0 ? null : ids.get(random.nextInt((int) created));
+    }
+
+    private static void report(Map<Operation, Recorder.Samples> samples, Duration duration) {
+        double seconds = duration.toMillis() / 1000.0;
+        System.out.printf("%n%-8s %9s %8s %9s %9s %9s %9s %9s %9s%n",
+                "op", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        long total = 0;
+        for (Map.Entry<Operation, Recorder.Samples> entry : samples.entrySet()) {
+            Recorder.Samples operationSamples = entry.getValue();
+            long[] sorted = operationSamples.sorted();
+            total += operationSamples.count();
+            System.out.printf("%-8s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey().key(),
+                    operationSamples.count(),
+                    operationSamples.errors(),
+                    operationSamples.count() / seconds,
+                    Recorder.Samples.percentileMillis(sorted, 50),
+                    Recorder.Samples.percentileMillis(sorted, 90),
+                    Recorder.Samples.percentileMillis(sorted, 99),
+                    Recorder.Samples.percentileMillis(sorted, 99.9),
+                    Recorder.Samples.percentileMillis(sorted, 100));
+        }
+        System.out.printf("%nTotal throughput: %.1f req/s%n", total / seconds);
+        samples.forEach((operation, operationSamples) ->
+                System.out.printf("Status codes for %s: %s (-1 = I/O error)%n", operation.key(), operationSamples.statuses()));
+    }
+
+    private static Operation[] parseMix(String mix) {
+        List<Operation> weighted = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] keyAndWeight = part.trim().split("=");
+            Operation operation = Operation.byKey(keyAndWeight[0].trim());
+            int weight = Integer.parseInt(keyAndWeight[1].trim());
+            for (int i = 0; i < weight; i++) {
+                weighted.add(operation);
+            }
+        }
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("The mix must contain at least one operation with a positive weight");
+        }
+        return weighted.toArray(Operation[]::new);
+    }
+
+    static Map<String, String> parseArgs(String[] args, Map<String, String> defaults) {
+        Map<String, String> options = new HashMap<>(defaults);
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --option=value, got '" + arg + "'. Options and defaults: "
+                        + Arrays.toString(defaults.entrySet().toArray()));
+            }
+            String[] keyAndValue = arg.substring(2).split("=", 2);
+            if (!defaults.containsKey(keyAndValue[0])) {
+                throw new IllegalArgumentException("Unknown option --" + keyAndValue[0] + ". Options and defaults: "
+                        + Arrays.toString(defaults.entrySet().toArray()));
+            }
+            options.put(keyAndValue[0], keyAndValue[1]);
+        }
+        return options;
+    }
+}
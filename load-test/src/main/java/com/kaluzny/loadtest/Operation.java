@@ -0,0 +1,88 @@
+package com.kaluzny.loadtest;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The calls the harness replays against {@code AutomobileRestController}.
+ */
+enum Operation {
+
+    CREATE("create") {
+        @Override
+        HttpRequest.Builder request(String baseUrl, String id, List<String> colors) {
+            String body = """
+                    {"name":"Load %d","color":"%s","is_original_color":true}"""
+                    .formatted(ThreadLocalRandom.current().nextInt(1_000), randomColor(colors));
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/automobiles"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body));
+        }
+    },
+    GET_BY_ID("get") {
+        @Override
+        HttpRequest.Builder request(String baseUrl, String id, List<String> colors) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/automobiles/" + id)).GET();
+        }
+    },
+    BY_COLOR("color") {
+        @Override
+        HttpRequest.Builder request(String baseUrl, String id, List<String> colors) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/automobiles?color=" + query(randomColor(colors)))).GET();
+        }
+    },
+    PREFIX_SEARCH("prefix") {
+        @Override
+        HttpRequest.Builder request(String baseUrl, String id, List<String> colors) {
+            String prefix = randomColor(colors).substring(0, 1) + "%";
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/automobiles?colorStartsWith=" + query(prefix)
+                    + "&page=0&size=20")).GET();
+        }
+    },
+    DELETE("delete") {
+        @Override
+        HttpRequest.Builder request(String baseUrl, String id, List<String> colors) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/automobiles/" + id)).DELETE();
+        }
+    };
+
+    private final String key;
+
+    Operation(String key) {
+        this.key = key;
+    }
+
+    String key() {
+        return key;
+    }
+
+    /**
+     * @return Whether the call targets an existing automobile and so needs an id created earlier.
+     */
+    boolean needsId() {
+        return this == GET_BY_ID || this == DELETE;
+    }
+
+    abstract HttpRequest.Builder request(String baseUrl, String id, List<String> colors);
+
+    static Operation byKey(String key) {
+        for (Operation operation : values()) {
+            if (operation.key.equals(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation '" + key + "', expected one of create, get, color, prefix, delete");
+    }
+
+    private static String randomColor(List<String> colors) {
+        return colors.get(ThreadLocalRandom.current().nextInt(colors.size()));
+    }
+
+    private static String query(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,48 @@
+package com.kaluzny.loadtest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Stub issuer: mints HS256 tokens shaped like the Keycloak tokens the app expects,
+ * signed with the secret the app's {@code loadtest} profile is configured with.
+ */
+class TokenMinter {
+
+    private static final String ISSUER = "http://localhost/load-test";
+    private static final String HEADER = encode("{\"alg\":\"HS256\",\"typ\":\"JWT\",\"kid\":\"load-test\"}".getBytes(StandardCharsets.UTF_8));
+
+    private final SecretKeySpec key;
+
+    TokenMinter(String secret) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    String mint(String username, Instant expiresAt) {
+        long now = Instant.now().getEpochSecond();
+        String payload = """
+                {"iss":"%s","sub":"%s","preferred_username":"%s","iat":%d,"exp":%d,\
+                "resource_access":{"roles":["USER","PERSON"]}}"""
+                .formatted(ISSUER, username, username, now, expiresAt.getEpochSecond());
+        String signingInput = HEADER + "." + encode(payload.getBytes(StandardCharsets.UTF_8));
+        return signingInput + "." + encode(sign(signingInput));
+    }
+
+    private byte[] sign(String signingInput) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign token", e);
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,161 @@
+package com.kaluzny.loadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares random (v4) and time-ordered (v7) UUID primary keys on a seeded copy of the {@code automobile} table:
+ * insert throughput, primary key index size and WAL written per inserted row.
+ * <p>
+ * Every variant gets a fresh table with the columns and primary key of one automobile partition, seeded with
+ * {@code seed-rows} rows; after a checkpoint the clients insert batches of rows for {@code duration} seconds.
+ * The ids are generated by the database with the bit layout of the app's generator, v4 ones by
+ * {@code gen_random_uuid()}. The WAL is measured for the whole server, run it while the app is stopped.
+ */
+public class UuidInsertBenchmark {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("url", "jdbc:postgresql://localhost:5434/automobiles");
+        DEFAULTS.put("user", "postgres");
+        DEFAULTS.put("password", "postgres");
+        DEFAULTS.put("seed-rows", "1000000");
+        DEFAULTS.put("duration", "30");
+        DEFAULTS.put("clients", "8");
+        DEFAULTS.put("batch", "10");
+    }
+
+    /**
+     * A v4 UUID with the 48 top bits replaced by the Unix time in milliseconds and the version set to 7.
+     */
+    private static final String CREATE_V7_FUNCTION = """
+            CREATE OR REPLACE FUNCTION uuid_bench_v7() RETURNS uuid LANGUAGE sql VOLATILE AS $$
+            SELECT encode(set_bit(set_bit(overlay(uuid_send(gen_random_uuid())
+                PLACING substring(int8send(floor(extract(epoch FROM clock_timestamp()) * 1000)::bigint) FROM 3)
+                FROM 1 FOR 6), 52, 1), 53, 1), 'hex')::uuid
+            $$""";
+
+    private static final String INSERT = """
+            INSERT INTO %s (id, name, color, creation_date, update_date, is_original_color, deleted)
+            SELECT %s, 'Bench ' || i, 'Blue', now(), now(), true, false FROM generate_series(1, ?) i""";
+
+    enum Variant {
+        V4("gen_random_uuid()"),
+        V7("uuid_bench_v7()");
+
+        final String idFunction;
+
+        Variant(String idFunction) {
+            this.idFunction = idFunction;
+        }
+
+        String table() {
+            return "uuid_bench_" + name().toLowerCase();
+        }
+    }
+
+    private final Map<String, String> options;
+
+    UuidInsertBenchmark(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadTest.parseArgs(args, DEFAULTS);
+        System.out.printf("UUID insert benchmark against %s: %s seeded rows, %s clients inserting batches of %s for %ss%n",
+                options.get("url"), options.get("seed-rows"), options.get("clients"), options.get("batch"),
+                options.get("duration"));
+
+        UuidInsertBenchmark benchmark = new UuidInsertBenchmark(options);
+        System.out.printf("%-8s %12s %14s %14s %16s%n", "ids", "rows/s", "rows inserted", "pk index MB", "WAL bytes/row");
+        for (Variant variant : Variant.values()) {
+            benchmark.run(variant);
+        }
+    }
+
+    void run(Variant variant) throws Exception {
+        String table = variant.table();
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_V7_FUNCTION);
+            statement.execute("DROP TABLE IF EXISTS " + table);
+            statement.execute("CREATE TABLE " + table + " (LIKE automobile INCLUDING DEFAULTS, "
+                    + "PRIMARY KEY (id, creation_date)) WITH (fillfactor = 90)");
+            try (PreparedStatement seed = connection.prepareStatement(INSERT.formatted(table, variant.idFunction))) {
+                seed.setInt(1, Integer.parseInt(options.get("seed-rows")));
+                seed.executeUpdate();
+            }
+            statement.execute("VACUUM ANALYZE " + table);
+            // the first change of every page after a checkpoint writes a full-page image to the WAL
+            statement.execute("CHECKPOINT");
+            String walStart = queryString(statement, "SELECT pg_current_wal_lsn()::text");
+
+            long started = System.nanoTime();
+            long inserted = insert(variant, Duration.ofSeconds(Long.parseLong(options.get("duration"))));
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            long walBytes = Long.parseLong(queryString(statement,
+                    "SELECT pg_wal_lsn_diff(pg_current_wal_lsn(), '" + walStart + "')::bigint"));
+            long indexBytes = Long.parseLong(queryString(statement, "SELECT pg_indexes_size('" + table + "')"));
+            System.out.printf("%-8s %12.0f %14d %14.1f %16.0f%n", variant, inserted / seconds, inserted,
+                    indexBytes / 1024.0 / 1024.0, (double) walBytes / inserted);
+
+            statement.execute("DROP TABLE " + table);
+            statement.execute("DROP FUNCTION uuid_bench_v7()");
+        }
+    }
+
+    private long insert(Variant variant, Duration duration) throws Exception {
+        int clients = Integer.parseInt(options.get("clients"));
+        int batch = Integer.parseInt(options.get("batch"));
+        long stopAt = System.nanoTime() + duration.toNanos();
+        String sql = INSERT.formatted(variant.table(), variant.idFunction);
+
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                results.add(executor.submit(() -> {
+                    long rows = 0;
+                    try (Connection connection = connect(); PreparedStatement insert = connection.prepareStatement(sql)) {
+                        insert.setInt(1, batch);
+                        while (System.nanoTime() < stopAt) {
+                            rows += insert.executeUpdate();
+                        }
+                    }
+                    return rows;
+                }));
+            }
+            long rows = 0;
+            for (Future<Long> result : results) {
+                rows += result.get();
+            }
+            return rows;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(options.get("url"), options.get("user"), options.get("password"));
+    }
+
+    private static String queryString(Statement statement, String sql) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.kaluzny.demo.aop;
+
+import com.kaluzny.demo.jfr.MessageHandledEvent;
+import com.kaluzny.demo.jfr.RepositoryQueryEvent;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.data.domain.Slice;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Records the repository queries and the handled JMS messages as Java Flight Recorder events, failed ones included.
+ * While no recording takes the events, the advice only checks that and proceeds.
+ */
+@Aspect
+@Component
+public class FlightRecorderAspect {
+
+    @Pointcut("execution(* com.kaluzny.demo.domain.AutomobileRepository+.*(..))")
+    public void repositoryMethods() {
+    }
+
+    @Pointcut("execution(* com.kaluzny.demo.listener..*(..)) && @annotation(jmsListener)")
+    public void listenerMethods(JmsListener jmsListener) {
+    }
+
+    @Around("repositoryMethods()")
+    public Object recordQuery(ProceedingJoinPoint joinPoint) throws Throwable {
+        RepositoryQueryEvent event = new RepositoryQueryEvent();
+        if (!event.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        event.begin();
+        Object result = null;
+        try {
+            result = joinPoint.proceed();
+            return result;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.query = joinPoint.getSignature().getName();
+                event.rows = rows(result);
+                event.commit();
+            }
+        }
+    }
+
+    @Around(value = "listenerMethods(jmsListener)", argNames = "joinPoint,jmsListener")
+    public Object recordMessage(ProceedingJoinPoint joinPoint, JmsListener jmsListener) throws Throwable {
+        MessageHandledEvent event = new MessageHandledEvent();
+        if (!event.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        event.begin();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.listener = joinPoint.getSignature().toShortString();
+                event.destination = jmsListener.destination();
+                Object[] args = joinPoint.getArgs();
+                event.automobiles = args.length > 0 && args[0] instanceof Collection<?> automobiles ? automobiles.size() : 1;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * @return The rows a repository call returned, -1 when it cannot be told without iterating the result.
+     */
+    static long rows(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Slice<?> slice) {
+            return slice.getNumberOfElements();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        if (result instanceof Number number) {
+            return number.longValue();
+        }
+        if (result instanceof Iterable<?>) {
+            return -1;
+        }
+        return 1;
+    }
+}
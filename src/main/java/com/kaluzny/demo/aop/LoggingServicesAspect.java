@@ -1,43 +1,60 @@
 package com.kaluzny.demo.aop;
 
 import lombok.extern.log4j.Log4j2;
-import org.aspectj.lang.JoinPoint;
-import org.aspectj.lang.annotation.*;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.logging.log4j.util.Unbox.box;
 
 @Log4j2
 @Aspect
 @Component
 public class LoggingServicesAspect {
 
-    private LocalDateTime start;
-
     @Pointcut("execution(public * com.kaluzny.demo.service.AutomobileService.*(..))")
     public void allPublicMethods() {
     }
 
-    @Before("allPublicMethods()")
-    public void logBefore(JoinPoint joinPoint) {
+    @Around("allPublicMethods()")
+    public Object logAround(ProceedingJoinPoint joinPoint) throws Throwable {
+        boolean debug = log.isDebugEnabled();
+        long start = System.nanoTime();
+        if (debug) {
+            logBefore(joinPoint);
+        }
+        Object returningValue;
+        try {
+            returningValue = joinPoint.proceed();
+        } catch (Exception exception) {
+            log.error("Service: {} - Exception thrown: {}", joinPoint.getSignature().toShortString(), exception.getMessage());
+            throw exception;
+        }
+        if (debug) {
+            logAfter(joinPoint, returningValue, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        return returningValue;
+    }
+
+    private static void logBefore(ProceedingJoinPoint joinPoint) {
         String methodName = joinPoint.getSignature().toShortString();
-        Object[] args = joinPoint.getArgs();
-        start = LocalDateTime.now();
-        if (args.length > 0) {
-            log.debug("\u001B[91m" + "Service: " + methodName + " - start. Args count - {}" + "\u001B[0m", args.length);
+        int argsCount = joinPoint.getArgs().length;
+        if (argsCount > 0) {
+            log.debug("Service: {} - start. Args count - {}", methodName, box(argsCount));
         } else {
-            log.debug("\u001B[91m" + "Service: " + methodName + " - start." + "\u001B[0m");
+            log.debug("Service: {} - start.", methodName);
         }
     }
 
-    @AfterReturning(value = "allPublicMethods()", returning = "returningValue")
-    public void logAfter(JoinPoint joinPoint, Object returningValue) {
+    private static void logAfter(ProceedingJoinPoint joinPoint, Object returningValue, long executionTime) {
         String methodName = joinPoint.getSignature().toShortString();
-        Object outputValue;
-        long executionTime = Duration.between(start, LocalDateTime.now()).toMillis();
         if (returningValue != null) {
+            Object outputValue;
             if (returningValue instanceof Collection) {
                 outputValue = "Collection size - " + ((Collection<?>) returningValue).size();
             } else if (returningValue instanceof byte[]) {
@@ -45,15 +62,9 @@ public class LoggingServicesAspect {
             } else {
                 outputValue = returningValue;
             }
-            log.debug("\u001B[91m" + "Service: " + methodName + " - end. Returns - {} Execution time:" + executionTime + "\u001B[0m", outputValue);
+            log.debug("Service: {} - end. Returns - {} Execution time: {} ms", methodName, outputValue, box(executionTime));
         } else {
-            log.debug("\u001B[91m" + "Service: " + methodName + " - end. Execution time:" + executionTime + "\u001B[0m");
+            log.debug("Service: {} - end. Execution time: {} ms", methodName, box(executionTime));
         }
     }
-
-    @AfterThrowing(value = "allPublicMethods()", throwing = "exception")
-    public void logAfterThrowing(JoinPoint joinPoint, Exception exception) {
-        String methodName = joinPoint.getSignature().toShortString();
-        log.error("\u001B[91m" + "Service: " + methodName + " - Exception thrown: " + exception.getMessage() + "\u001B[0m");
-    }
-}
\ No newline at end of file
+}
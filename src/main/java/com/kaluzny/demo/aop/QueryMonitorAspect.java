@@ -0,0 +1,44 @@
+package com.kaluzny.demo.aop;
+
+import com.kaluzny.demo.config.QueryMonitor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.stereotype.Component;
+
+/**
+ * Names the statements of every repository call after its method for the {@link QueryMonitor},
+ * and hands it the rows the call returned.
+ */
+@Aspect
+@Component
+public class QueryMonitorAspect {
+
+    private final QueryMonitor queryMonitor;
+
+    public QueryMonitorAspect(QueryMonitor queryMonitor) {
+        this.queryMonitor = queryMonitor;
+    }
+
+    @Pointcut("execution(* com.kaluzny.demo.domain.AutomobileRepository+.*(..))")
+    public void repositoryMethods() {
+    }
+
+    @Around("repositoryMethods()")
+    public Object monitorQuery(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!queryMonitor.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        String query = joinPoint.getSignature().getName();
+        String outer = queryMonitor.enterQuery(query);
+        long rows = -1;
+        try {
+            Object result = joinPoint.proceed();
+            rows = FlightRecorderAspect.rows(result);
+            return result;
+        } finally {
+            queryMonitor.exitQuery(outer, query, rows);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.kaluzny.demo.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Selects signature verification keys from a JWKS kept in memory.
+ * <p>
+ * Keys are converted to {@link Key} objects once per refresh, so verifying a token never touches
+ * the network or re-parses key material. The JWKS is loaded either from the issuer, in the background
+ * and at a fixed interval, or from a local file (offline mode). A token signed with an unknown key id
+ * triggers an early refresh, at most once per minimum interval, to pick up rotated keys.
+ * <p>
+ * Only tokens signed with one of the accepted algorithms are verified. Shared secrets ({@code oct} keys) are
+ * only taken from the local file, a JWKS served by the issuer is expected to carry public keys only.
+ */
+@Slf4j
+public class CachedJwksKeySelector implements JWSKeySelector<SecurityContext>, AutoCloseable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 2_000;
+    private static final int READ_TIMEOUT_MILLIS = 2_000;
+    private static final int SIZE_LIMIT_BYTES = 64 * 1024;
+    private static final long MIN_REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final URL jwksUrl;
+    private final Resource jwksFile;
+    private final Set<JWSAlgorithm> algorithms;
+    private final AtomicReference<Keys> keys = new AtomicReference<>(Keys.EMPTY);
+    private final AtomicLong lastRefresh = new AtomicLong(System.nanoTime() - MIN_REFRESH_INTERVAL_NANOS);
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jwks-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private CachedJwksKeySelector(URL jwksUrl, Resource jwksFile, Set<JWSAlgorithm> algorithms) {
+        this.jwksUrl = jwksUrl;
+        this.jwksFile = jwksFile;
+        this.algorithms = Set.copyOf(algorithms);
+    }
+
+    /**
+     * Loads the keys from the issuer in the background, startup does not wait for it.
+     *
+     * @param algorithms The accepted signature algorithms, HMAC ones are never accepted from the issuer.
+     */
+    public static CachedJwksKeySelector fromUrl(URL jwksUrl, Duration refreshInterval, Set<JWSAlgorithm> algorithms) {
+        CachedJwksKeySelector selector = new CachedJwksKeySelector(jwksUrl, null, algorithms);
+        selector.refresher.scheduleWithFixedDelay(selector::refresh,
+                0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        return selector;
+    }
+
+    /**
+     * Offline mode: loads the keys once from a local JWKS file.
+     */
+    public static CachedJwksKeySelector fromFile(Resource jwksFile, Set<JWSAlgorithm> algorithms) {
+        CachedJwksKeySelector selector = new CachedJwksKeySelector(null, jwksFile, algorithms);
+        selector.refresh();
+        return selector;
+    }
+
+    @Override
+    public List<? extends Key> selectJWSKeys(JWSHeader header, SecurityContext context) {
+        if (!algorithms.contains(header.getAlgorithm())) {
+            return List.of();
+        }
+        Keys current = keys.get();
+        String keyId = header.getKeyID();
+        List<Key> candidates = keyId == null ? current.all() : current.byKeyId().get(keyId);
+        if (candidates == null) {
+            refreshSoon();
+            return List.of();
+        }
+        return candidates.stream()
+                .filter(key -> matches(header.getAlgorithm(), key))
+                .toList();
+    }
+
+    /**
+     * @return Whether the current JWKS holds a key with this id.
+     */
+    public boolean holdsKey(String keyId) {
+        return keyId != null && keys.get().byKeyId().containsKey(keyId);
+    }
+
+    private void refresh() {
+        lastRefresh.set(System.nanoTime());
+        try {
+            JWKSet jwkSet = load();
+            keys.set(Keys.of(jwkSet, jwksFile != null));
+            log.debug("Loaded {} JWKS keys", jwkSet.getKeys().size());
+        } catch (IOException | ParseException | JOSEException e) {
+            log.warn("Cannot load JWKS from {}, keeping {} cached keys: {}",
+                    jwksUrl != null ? jwksUrl : jwksFile, keys.get().all().size(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    private JWKSet load() throws IOException, ParseException {
+        if (jwksFile != null) {
+            try (InputStream inputStream = jwksFile.getInputStream()) {
+                return JWKSet.parse(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return JWKSet.load(jwksUrl, CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS, SIZE_LIMIT_BYTES);
+    }
+
+    private void refreshSoon() {
+        long last = lastRefresh.get();
+        if (jwksUrl != null && System.nanoTime() - last > MIN_REFRESH_INTERVAL_NANOS
+                && lastRefresh.compareAndSet(last, System.nanoTime())) {
+            refresher.execute(this::refresh);
+        }
+    }
+
+    private static boolean matches(JWSAlgorithm algorithm, Key key) {
+        String keyAlgorithm = key.getAlgorithm();
+        if (JWSAlgorithm.Family.RSA.contains(algorithm)) {
+            return "RSA".equals(keyAlgorithm);
+        }
+        if (JWSAlgorithm.Family.EC.contains(algorithm)) {
+            return "EC".equals(keyAlgorithm);
+        }
+        if (JWSAlgorithm.Family.HMAC_SHA.contains(algorithm)) {
+            return key instanceof SecretKey;
+        }
+        return false;
+    }
+
+    private record Keys(Map<String, List<Key>> byKeyId, List<Key> all) {
+
+        static final Keys EMPTY = new Keys(Map.of(), List.of());
+
+        /**
+         * @param secretKeys Whether shared secrets are taken, only for a local file.
+         */
+        static Keys of(JWKSet jwkSet, boolean secretKeys) throws JOSEException {
+            Map<String, List<Key>> byKeyId = new HashMap<>();
+            List<Key> all = new ArrayList<>();
+            for (JWK jwk : jwkSet.getKeys()) {
+                Key key = toKey(jwk, secretKeys);
+                if (key == null) {
+                    continue;
+                }
+                all.add(key);
+                if (jwk.getKeyID() != null) {
+                    byKeyId.computeIfAbsent(jwk.getKeyID(), id -> new ArrayList<>()).add(key);
+                }
+            }
+            return new Keys(Map.copyOf(byKeyId), List.copyOf(all));
+        }
+
+        private static Key toKey(JWK jwk, boolean secretKeys) throws JOSEException {
+            if (jwk.getKeyUse() != null && !"sig".equals(jwk.getKeyUse().identifier())) {
+                return null;
+            }
+            if (jwk instanceof RSAKey rsaKey) {
+                return rsaKey.toRSAPublicKey();
+            }
+            if (jwk instanceof ECKey ecKey) {
+                return ecKey.toECPublicKey();
+            }
+            if (secretKeys && jwk instanceof OctetSequenceKey octetSequenceKey) {
+                return octetSequenceKey.toSecretKey("HmacSHA256");
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.kaluzny.demo.config;
+
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers tokens that were already verified, so a client sending the same bearer token
+ * again skips parsing and signature verification until the token expires.
+ * <p>
+ * A token is served from memory only while the {@link CachedJwksKeySelector} still holds the key it names in its
+ * {@code kid} header: once the issuer drops a key from its JWKS, the tokens signed with it are verified again,
+ * and rejected. Tokens without a key id are verified every time. The least recently used tokens are forgotten
+ * first once the cache is full.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private static final String KEY_ID_HEADER = "kid";
+
+    private final JwtDecoder delegate;
+    private final CachedJwksKeySelector keySelector;
+    private final Duration clockSkew;
+    private final int maxSize;
+    private final Clock clock = Clock.systemUTC();
+    private final Map<String, Jwt> verified;
+
+    public CachingJwtDecoder(JwtDecoder delegate, CachedJwksKeySelector keySelector, Duration clockSkew, int maxSize) {
+        this.delegate = delegate;
+        this.keySelector = keySelector;
+        this.clockSkew = clockSkew;
+        this.maxSize = maxSize;
+        this.verified = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Jwt> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        Jwt cached = verified.get(token);
+        if (cached != null) {
+            if (!keySelector.holdsKey(keyId(cached))) {
+                verified.remove(token);
+                return delegate.decode(token);
+            }
+            if (isValid(cached, clock.instant())) {
+                return cached;
+            }
+            verified.remove(token);
+            String message = "Jwt expired at " + cached.getExpiresAt();
+            throw new JwtValidationException(message, List.of(new OAuth2Error(OAuth2ErrorCodes.INVALID_TOKEN, message, null)));
+        }
+
+        Jwt jwt = delegate.decode(token);
+        if (maxSize > 0 && jwt.getExpiresAt() != null && keyId(jwt) != null) {
+            verified.put(token, jwt);
+        }
+        return jwt;
+    }
+
+    private static String keyId(Jwt jwt) {
+        return jwt.getHeaders().get(KEY_ID_HEADER) instanceof String keyId ? keyId : null;
+    }
+
+    private boolean isValid(Jwt jwt, Instant now) {
+        return jwt.getExpiresAt() != null && now.minus(clockSkew).isBefore(jwt.getExpiresAt());
+    }
+}
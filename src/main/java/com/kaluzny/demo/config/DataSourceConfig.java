@@ -0,0 +1,123 @@
+package com.kaluzny.demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The primary data source as Spring Boot would create it; with replicas configured
+ * ({@code automobile.datasource.replica-urls}) it is wrapped in a {@link ReplicaRoutingDataSource}, otherwise in a
+ * {@link LazyPrimaryDataSource}; either way a transaction takes a pooled connection only once it runs a statement.
+ * Its statements are watched by the {@link QueryMonitor}.
+ */
+@Configuration
+class DataSourceConfig {
+
+    /**
+     * Replicas are skipped when a connection cannot be had quickly, the read goes to the primary instead.
+     */
+    private static final long REPLICA_CONNECTION_TIMEOUT_MILLIS = 1_000;
+
+    @Value("${automobile.datasource.replica-urls:}")
+    private List<String> replicaUrls;
+
+    @Value("${automobile.datasource.replica-pool-size:10}")
+    private int replicaPoolSize;
+
+    @Value("${automobile.datasource.max-lag:1s}")
+    private Duration maxLag;
+
+    @Value("${automobile.datasource.lag-check-interval:1s}")
+    private Duration lagCheckInterval;
+
+    @Value("${automobile.datasource.read-your-writes-window:5s}")
+    private Duration readYourWritesWindow;
+
+    @Value("${automobile.read-model.enabled:false}")
+    private boolean readModelEnabled;
+
+    @Value("${automobile.query-monitor.enabled:true}")
+    private boolean queryMonitorEnabled;
+
+    @Value("${automobile.query-monitor.slow-threshold:500ms}")
+    private Duration slowThreshold;
+
+    @Value("${automobile.query-monitor.max-rows:10000}")
+    private long maxRows;
+
+    @Value("${automobile.query-monitor.max-statements-per-request:20}")
+    private int maxStatementsPerRequest;
+
+    @Value("${automobile.query-monitor.alarms-kept:100}")
+    private int alarmsKept;
+
+    @Value("${automobile.query-monitor.alarm-log-interval:1m}")
+    private Duration alarmLogInterval;
+
+    @Bean
+    public ReadYourWrites readYourWrites() {
+        return new ReadYourWrites(!replicas().isEmpty() || readModelEnabled, readYourWritesWindow);
+    }
+
+    @Scheduled(fixedDelayString = "${automobile.datasource.read-your-writes-evict-interval:PT1M}")
+    void evictExpiredWrites() {
+        readYourWrites().evictExpiredWrites();
+    }
+
+    @Bean
+    public QueryMonitor queryMonitor(MeterRegistry meterRegistry) {
+        return new QueryMonitor(queryMonitorEnabled, slowThreshold, maxRows, maxStatementsPerRequest,
+                alarmsKept, alarmLogInterval, meterRegistry);
+    }
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties, Environment environment,
+                                 ReadYourWrites readYourWrites, QueryMonitor queryMonitor, MeterRegistry meterRegistry) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        List<String> urls = replicas();
+        if (urls.isEmpty()) {
+            return queryMonitor.monitor(new LazyPrimaryDataSource(primary));
+        }
+
+        // Spring Boot cannot see the pools behind the routing data source, so they report their metrics themselves
+        MicrometerMetricsTrackerFactory metricsTrackerFactory = new MicrometerMetricsTrackerFactory(meterRegistry);
+        primary.setPoolName("primary");
+        primary.setMetricsTrackerFactory(metricsTrackerFactory);
+        List<HikariDataSource> replicaPools = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + (i + 1));
+            replica.setJdbcUrl(urls.get(i));
+            replica.setUsername(properties.determineUsername());
+            replica.setPassword(properties.determinePassword());
+            replica.setMaximumPoolSize(replicaPoolSize);
+            replica.setConnectionTimeout(REPLICA_CONNECTION_TIMEOUT_MILLIS);
+            replica.setReadOnly(true);
+            // a replica that is down at startup is skipped until it comes back
+            replica.setInitializationFailTimeout(-1);
+            replica.setMetricsTrackerFactory(metricsTrackerFactory);
+            replicaPools.add(replica);
+        }
+        return queryMonitor.monitor(
+                new ReplicaRoutingDataSource(primary, replicaPools, readYourWrites, maxLag, lagCheckInterval, meterRegistry));
+    }
+
+    private List<String> replicas() {
+        return replicaUrls.stream().filter(StringUtils::hasText).map(String::trim).toList();
+    }
+}
@@ -0,0 +1,68 @@
+package com.kaluzny.demo.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.broker.BrokerService;
+
+import java.io.File;
+
+/**
+ * ActiveMQ broker running inside the app for single-node installations ({@code automobile.jms.mode: embedded}).
+ * The app connects to it over the {@code vm://} transport, so messages never leave the JVM.
+ * <p>
+ * A persistent broker keeps undelivered messages and durable subscriptions in a KahaDB store
+ * in its data directory across restarts, a non-persistent one only in memory.
+ */
+@Slf4j
+class EmbeddedBroker implements AutoCloseable {
+
+    private static final String NAME = "automobile";
+
+    private final BrokerService broker;
+    private final boolean persistent;
+
+    /**
+     * Starts the broker if enabled.
+     */
+    EmbeddedBroker(boolean enabled, boolean persistent, File dataDirectory) throws Exception {
+        this.persistent = persistent;
+        if (!enabled) {
+            broker = null;
+            return;
+        }
+        broker = new BrokerService();
+        broker.setBrokerName(NAME);
+        broker.setPersistent(persistent);
+        broker.setDataDirectoryFile(dataDirectory);
+        broker.setUseJmx(false);
+        broker.setSchedulerSupport(false);
+        // stopped with the application context, after the listeners
+        broker.setUseShutdownHook(false);
+        broker.start();
+        broker.waitUntilStarted();
+        log.info("Started the embedded JMS broker, persistent: {}", persistent);
+    }
+
+    /**
+     * The broker URL of the connection factory; does not start a broker of its own if this one is stopped.
+     */
+    String url() {
+        return "vm://" + NAME + "?create=false";
+    }
+
+    boolean isEnabled() {
+        return broker != null;
+    }
+
+    boolean isPersistent() {
+        return persistent;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (broker == null) {
+            return;
+        }
+        broker.stop();
+        broker.waitUntilStopped();
+    }
+}
@@ -11,6 +11,9 @@ import org.springframework.jms.support.converter.MappingJackson2MessageConverter
 import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.jms.support.converter.MessageType;
 
+import java.io.File;
+import java.util.List;
+
 @Configuration
 @EnableJms
 public class JMSConfig {
@@ -18,31 +21,68 @@ public class JMSConfig {
     @Value("${spring.activemq.broker-url}")
     private String brokerUrl;
 
+    @Value("${automobile.jms.mode:tcp}")
+    private String mode;
+
+    @Value("${automobile.jms.embedded.persistent:false}")
+    private boolean embeddedPersistent;
+
+    @Value("${automobile.jms.embedded.data-directory:data/activemq}")
+    private File embeddedDataDirectory;
+
+    @Value("${automobile.startup.defer-listeners:true}")
+    private boolean deferListeners;
+
     @Bean
-    public DefaultJmsListenerContainerFactory automobileJmsContFactory() {
+    public DefaultJmsListenerContainerFactory automobileJmsContFactory() throws Exception {
         DefaultJmsListenerContainerFactory containerFactory = new DefaultJmsListenerContainerFactory();
         containerFactory.setPubSubDomain(true);
         containerFactory.setConnectionFactory(connectionFactory());
-        containerFactory.setMessageConverter(jacksonJmsMsgConverter());
+        containerFactory.setMessageConverter(jmsMessageConverter());
         containerFactory.setSubscriptionDurable(true);
+        // started by DeferredStartupTasks once the app is ready
+        containerFactory.setAutoStartup(!deferListeners);
         return containerFactory;
     }
 
+    /**
+     * Started in the embedded mode only.
+     */
+    @Bean(destroyMethod = "close")
+    EmbeddedBroker embeddedBroker() throws Exception {
+        return new EmbeddedBroker("embedded".equals(mode), embeddedPersistent, embeddedDataDirectory);
+    }
+
     @Bean
-    public CachingConnectionFactory connectionFactory() {
+    public CachingConnectionFactory connectionFactory() throws Exception {
         ActiveMQConnectionFactory activeMQConnFactory = new ActiveMQConnectionFactory();
-        activeMQConnFactory.setBrokerURL(brokerUrl);
+        EmbeddedBroker embeddedBroker = embeddedBroker();
+        if (embeddedBroker.isEnabled()) {
+            activeMQConnFactory.setBrokerURL(embeddedBroker.url());
+            // object messages are handed to the consumers without serializing them, see ObjectMessageConverter
+            activeMQConnFactory.setObjectMessageSerializationDefered(true);
+            activeMQConnFactory.setTrustedPackages(List.of("com.kaluzny.demo", "java.util", "java.lang", "java.time"));
+        } else {
+            activeMQConnFactory.setBrokerURL(brokerUrl);
+        }
         CachingConnectionFactory factory = new CachingConnectionFactory();
         factory.setTargetConnectionFactory(activeMQConnFactory);
         factory.setClientId("client123");
         return factory;
     }
 
+    /**
+     * JSON text messages; with the non-persistent embedded broker, serializable payloads go as object messages.
+     */
     @Bean
-    public MessageConverter jacksonJmsMsgConverter() {
+    public MessageConverter jmsMessageConverter() throws Exception {
         MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
         converter.setTargetType(MessageType.TEXT);
         converter.setTypeIdPropertyName("_type");
+        EmbeddedBroker embeddedBroker = embeddedBroker();
+        if (embeddedBroker.isEnabled() && !embeddedBroker.isPersistent()) {
+            return new ObjectMessageConverter(converter);
+        }
         return converter;
     }
 }
@@ -0,0 +1,70 @@
+package com.kaluzny.demo.config;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtIssuerValidator;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * JWT decoding without issuer round-trips: keys come from a locally cached JWKS
+ * and tokens that were already verified are served from memory.
+ */
+@Configuration
+public class JwtDecoderConfig {
+
+    @Value("${spring.security.oauth2.resource-server.jwt.issuer-uri}")
+    private String issuer;
+
+    @Value("${jwt.clock-skew:60s}")
+    private Duration clockSkew;
+
+    @Value("${jwt.cache.max-size:10000}")
+    private int cacheMaxSize;
+
+    @Bean
+    public CachedJwksKeySelector jwksKeySelector(
+            @Value("${jwt.jwks.file:}") String jwksFile,
+            @Value("${jwt.jwks.uri}") String jwksUri,
+            @Value("${jwt.jwks.refresh-interval:5m}") Duration refreshInterval,
+            @Value("${jwt.algorithms:RS256,ES256}") List<String> algorithms,
+            ResourceLoader resourceLoader) throws MalformedURLException {
+        Set<JWSAlgorithm> accepted = algorithms.stream()
+                .map(String::trim)
+                .map(JWSAlgorithm::parse)
+                .collect(Collectors.toSet());
+        if (!jwksFile.isBlank()) {
+            return CachedJwksKeySelector.fromFile(resourceLoader.getResource(jwksFile), accepted);
+        }
+        return CachedJwksKeySelector.fromUrl(new URL(jwksUri), refreshInterval, accepted);
+    }
+
+    @Bean
+    public JwtDecoder jwtDecoder(CachedJwksKeySelector jwksKeySelector) {
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(jwksKeySelector);
+        // claims are checked by the validators below, with the configured clock skew
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(jwtProcessor);
+        decoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+                new JwtTimestampValidator(clockSkew),
+                new JwtIssuerValidator(issuer)));
+        return new CachingJwtDecoder(decoder, jwksKeySelector, clockSkew, cacheMaxSize);
+    }
+}
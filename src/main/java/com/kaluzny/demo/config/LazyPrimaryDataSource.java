@@ -0,0 +1,24 @@
+package com.kaluzny.demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * The primary pool when there are no replicas. Like {@link ReplicaRoutingDataSource} it fetches the physical
+ * connection on the first statement of a transaction, so a transaction that runs none, e.g. a read served by
+ * the read model or a caller waiting for a coalesced read, does not hold a pooled connection.
+ */
+class LazyPrimaryDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+    private final HikariDataSource primary;
+
+    LazyPrimaryDataSource(HikariDataSource primary) {
+        this.primary = primary;
+        setTargetDataSource(primary);
+    }
+
+    @Override
+    public void close() {
+        primary.close();
+    }
+}
@@ -0,0 +1,60 @@
+package com.kaluzny.demo.config;
+
+import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.NanoTimeStopwatchFactory;
+import net.ttddyy.dsproxy.proxy.ProxyConfig;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Hands out connections whose statements report to a {@link QueryExecutionListener} once they ran,
+ * with their elapsed time in nanoseconds.
+ * <p>
+ * Wraps the connections itself rather than using datasource-proxy's {@code ProxyDataSource}: that one asks every
+ * connection for its isolation level, a round trip to PostgreSQL per transaction. Unwrapping goes through to the
+ * pools, so Spring Boot and the warm-up still find them. Closing it closes the data source it wraps.
+ */
+class MonitoredDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private final ProxyConfig proxyConfig;
+
+    MonitoredDataSource(DataSource dataSource, QueryExecutionListener listener) {
+        super(dataSource);
+        this.proxyConfig = ProxyConfig.Builder.create()
+                .dataSourceName("automobiles")
+                .queryListener(listener)
+                .stopwatchFactory(new NanoTimeStopwatchFactory())
+                .build();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return monitor(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return monitor(super.getConnection(username, password));
+    }
+
+    /**
+     * Called by the context on shutdown, which closes this bean rather than the pools behind it.
+     */
+    @Override
+    public void close() throws Exception {
+        if (getTargetDataSource() instanceof AutoCloseable target) {
+            target.close();
+        }
+    }
+
+    private Connection monitor(Connection connection) {
+        ConnectionInfo connectionInfo = new ConnectionInfo();
+        connectionInfo.setDataSourceName(proxyConfig.getDataSourceName());
+        connectionInfo.setConnectionId(proxyConfig.getConnectionIdManager().getId(connection));
+        return proxyConfig.getJdbcProxyFactory().createConnection(connection, connectionInfo, proxyConfig);
+    }
+}
@@ -0,0 +1,43 @@
+package com.kaluzny.demo.config;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.ObjectMessage;
+import jakarta.jms.Session;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import java.io.Serializable;
+
+/**
+ * Sends serializable payloads as object messages and everything else with the given converter.
+ * <p>
+ * With the non-persistent embedded broker, object messages are not serialized at all: the {@code vm://} transport
+ * hands the sent object itself to every consumer in the JVM. The payloads are therefore shared, they are not
+ * changed once sent and the listeners only read them. A persistent broker or one across the network would have to
+ * serialize them with Java serialization, so it gets the JSON messages instead.
+ */
+class ObjectMessageConverter implements MessageConverter {
+
+    private final MessageConverter delegate;
+
+    ObjectMessageConverter(MessageConverter delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+        if (object instanceof Serializable serializable) {
+            return session.createObjectMessage(serializable);
+        }
+        return delegate.toMessage(object, session);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+        if (message instanceof ObjectMessage objectMessage) {
+            return objectMessage.getObject();
+        }
+        return delegate.fromMessage(message);
+    }
+}
@@ -0,0 +1,276 @@
+package com.kaluzny.demo.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Watches the statements the app sends to the database. Every JDBC statement is timed under the name of the
+ * {@code AutomobileRepository} method it runs for, see {@link com.kaluzny.demo.aop.QueryMonitorAspect}; statements
+ * run outside a repository call, such as the inserts of Hibernate's flush at commit or those of a
+ * {@code JdbcTemplate}, under their SQL verb. The rows every repository call returns and the statements every
+ * API request runs are counted as well.
+ * <p>
+ * Statements slower than {@code slow-threshold}, repository calls returning more than {@code max-rows} rows and
+ * requests running more than {@code max-statements-per-request} statements, the sign of an N+1 pattern, raise an
+ * alarm: it is counted, kept for {@code /actuator/queries} and logged as a warning, at most once per
+ * {@code alarm-log-interval} for the same kind of alarm and query.
+ */
+@Slf4j
+public class QueryMonitor implements QueryExecutionListener {
+
+    public static final String SLOW = "slow";
+    public static final String ROWS = "rows";
+    public static final String STATEMENTS = "statements";
+
+    private static final String[] VERBS = {"select", "insert", "update", "delete", "with"};
+    private static final int MAX_LOGGED_SQL_LENGTH = 1_000;
+
+    private final ConcurrentMap<String, Timer> statementTimers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, DistributionSummary> rowSummaries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> lastLogged = new ConcurrentHashMap<>();
+    private final Deque<Alarm> alarms = new ArrayDeque<>();
+    private final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+    private final boolean enabled;
+    private final Duration slowThreshold;
+    private final long slowThresholdNanos;
+    private final long maxRows;
+    private final int maxStatementsPerRequest;
+    private final int alarmsKept;
+    private final long alarmLogIntervalNanos;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary requestStatements;
+
+    public QueryMonitor(boolean enabled, Duration slowThreshold, long maxRows, int maxStatementsPerRequest,
+                        int alarmsKept, Duration alarmLogInterval, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.slowThreshold = slowThreshold;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.maxRows = maxRows;
+        this.maxStatementsPerRequest = maxStatementsPerRequest;
+        this.alarmsKept = alarmsKept;
+        this.alarmLogIntervalNanos = alarmLogInterval.toNanos();
+        this.meterRegistry = meterRegistry;
+        this.requestStatements = DistributionSummary.builder("automobile.db.request.statements")
+                .description("JDBC statements run per API request")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The data source whose statements are watched, the given one when disabled.
+     */
+    public DataSource monitor(DataSource dataSource) {
+        return enabled ? new MonitoredDataSource(dataSource, this) : dataSource;
+    }
+
+    /**
+     * Names the statements the current thread runs until {@link #exitQuery}.
+     *
+     * @return The name in use before, to be handed back to {@link #exitQuery}.
+     */
+    public String enterQuery(String query) {
+        Context context = contexts.get();
+        String outer = context.query;
+        context.query = query;
+        return outer;
+    }
+
+    /**
+     * @param rows The rows the repository call returned, negative when not known or when the call failed.
+     */
+    public void exitQuery(String outer, String query, long rows) {
+        contexts.get().query = outer;
+        if (rows < 0) {
+            return;
+        }
+        rowSummaries.computeIfAbsent(query, name -> DistributionSummary.builder("automobile.db.rows")
+                        .description("Rows returned per repository call")
+                        .tag("query", name)
+                        .register(meterRegistry))
+                .record(rows);
+        if (rows > maxRows) {
+            alarm(ROWS, query, "returned " + rows + " rows");
+        }
+    }
+
+    /**
+     * Counts the statements the current thread runs until {@link #endRequest}.
+     */
+    public void startRequest() {
+        contexts.get().request = new LinkedHashMap<>();
+    }
+
+    public void endRequest(String request) {
+        Context context = contexts.get();
+        Map<String, Integer> counts = context.request;
+        context.request = null;
+        if (counts == null) {
+            return;
+        }
+        int statements = counts.values().stream().mapToInt(Integer::intValue).sum();
+        requestStatements.record(statements);
+        if (statements > maxStatementsPerRequest) {
+            String mostRun = counts.entrySet().stream().max(Map.Entry.comparingByValue()).orElseThrow().getKey();
+            String perQuery = counts.entrySet().stream()
+                    .map(count -> count.getKey() + "=" + count.getValue())
+                    .collect(Collectors.joining(", "));
+            alarm(STATEMENTS, mostRun, request + " ran " + statements + " statements: " + perQuery);
+        }
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    /**
+     * Called on the thread that ran the statement, its elapsed time is in nanoseconds,
+     * see {@link MonitoredDataSource}.
+     */
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Context context = contexts.get();
+        String sql = queryInfoList.isEmpty() ? "" : queryInfoList.get(0).getQuery();
+        String query = context.query != null ? context.query : verb(sql);
+        long nanos = execInfo.getElapsedTime();
+        statementTimers.computeIfAbsent(query, name -> Timer.builder("automobile.db.statements")
+                        .description("Execution time of the JDBC statements per repository method or SQL verb")
+                        .tag("query", name)
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (context.request != null) {
+            context.request.merge(query, 1, Integer::sum);
+        }
+        if (nanos >= slowThresholdNanos) {
+            String statement = sql.length() > MAX_LOGGED_SQL_LENGTH ? sql.substring(0, MAX_LOGGED_SQL_LENGTH) + "..." : sql;
+            String batch = execInfo.isBatch() ? " (batch of " + execInfo.getBatchSize() + ")" : "";
+            alarm(SLOW, query, "took " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms" + batch + ": " + statement);
+        }
+    }
+
+    /**
+     * @return Per query the statements run, their total, mean and recent maximum time, and the rows returned
+     * per repository call, the query the database spent most time on first.
+     */
+    public List<Map<String, Object>> queries() {
+        List<Map<String, Object>> queries = new ArrayList<>();
+        List<Map.Entry<String, Timer>> timers = new ArrayList<>(statementTimers.entrySet());
+        timers.sort(Comparator.comparingDouble(
+                (Map.Entry<String, Timer> timer) -> timer.getValue().totalTime(TimeUnit.NANOSECONDS)).reversed());
+        for (Map.Entry<String, Timer> entry : timers) {
+            String query = entry.getKey();
+            Timer timer = entry.getValue();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("query", query);
+            stats.put("statements", timer.count());
+            stats.put("totalTimeMs", timer.totalTime(TimeUnit.MILLISECONDS));
+            stats.put("meanTimeMs", timer.mean(TimeUnit.MILLISECONDS));
+            stats.put("maxTimeMs", timer.max(TimeUnit.MILLISECONDS));
+            DistributionSummary rows = rowSummaries.get(query);
+            if (rows != null) {
+                stats.put("calls", rows.count());
+                stats.put("meanRows", rows.mean());
+                stats.put("maxRows", rows.max());
+            }
+            queries.add(stats);
+        }
+        return queries;
+    }
+
+    /**
+     * @return The alarms kept, the latest first.
+     */
+    public List<Alarm> alarms() {
+        synchronized (alarms) {
+            List<Alarm> latestFirst = new ArrayList<>(alarms);
+            Collections.reverse(latestFirst);
+            return latestFirst;
+        }
+    }
+
+    public void clearAlarms() {
+        synchronized (alarms) {
+            alarms.clear();
+        }
+    }
+
+    public Map<String, Object> thresholds() {
+        Map<String, Object> thresholds = new LinkedHashMap<>();
+        thresholds.put("slowThreshold", slowThreshold.toString());
+        thresholds.put("maxRows", maxRows);
+        thresholds.put("maxStatementsPerRequest", maxStatementsPerRequest);
+        return thresholds;
+    }
+
+    private void alarm(String type, String query, String detail) {
+        meterRegistry.counter("automobile.db.alarms", "type", type, "query", query).increment();
+        synchronized (alarms) {
+            if (alarms.size() >= alarmsKept) {
+                alarms.removeFirst();
+            }
+            alarms.addLast(new Alarm(Instant.now(), type, query, detail));
+        }
+        String key = type + ' ' + query;
+        long now = System.nanoTime();
+        Long logged = lastLogged.get(key);
+        if (logged == null || now - logged >= alarmLogIntervalNanos) {
+            lastLogged.put(key, now);
+            log.warn("Query alarm {} for {}: {}", type, query, detail);
+        }
+    }
+
+    private static String verb(String sql) {
+        int start = 0;
+        while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) {
+            start++;
+        }
+        for (String verb : VERBS) {
+            if (sql.regionMatches(true, start, verb, 0, verb.length())) {
+                return verb;
+            }
+        }
+        return "other";
+    }
+
+    /**
+     * @param time   When the alarm was raised.
+     * @param type   {@link #SLOW}, {@link #ROWS} or {@link #STATEMENTS}.
+     * @param query  The repository method or SQL verb; for {@link #STATEMENTS} the one the request ran most often.
+     * @param detail What was measured.
+     */
+    public record Alarm(Instant time, String type, String query, String detail) {
+    }
+
+    /**
+     * What the current thread is running: the repository method and, within an API request,
+     * the statements run so far per query.
+     */
+    private static final class Context {
+
+        String query;
+        Map<String, Integer> request;
+    }
+}
@@ -0,0 +1,85 @@
+package com.kaluzny.demo.config;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Read-your-writes for replica and read model reads: a client that wrote within the window reads from the primary,
+ * so it never misses its own write on a replica that has not replayed it yet, or in a read model that has not
+ * received its event yet.
+ * <p>
+ * Writes are recorded and reads are pinned by {@link com.kaluzny.demo.web.ReadYourWritesFilter};
+ * {@link ReplicaRoutingDataSource} sends the reads of a pinned thread to the primary and
+ * {@link com.kaluzny.demo.service.AutomobileReadModel} leaves them to the database.
+ * <p>
+ * A write is remembered by the instance that served it, and by the client in a cookie holding the time of the write,
+ * so that the next read finds it on any instance; the clocks of the instances must agree well within the window.
+ */
+public class ReadYourWrites {
+
+    private final ConcurrentMap<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private final ThreadLocal<Boolean> pinned = new ThreadLocal<>();
+    private final boolean enabled;
+    private final Duration window;
+    private final long windowNanos;
+
+    public ReadYourWrites(boolean enabled, Duration window) {
+        this.enabled = enabled;
+        this.window = window;
+        this.windowNanos = window.toNanos();
+    }
+
+    /**
+     * @return false without replicas and read model, every read goes to the primary anyway.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public void recordWrite(String client) {
+        lastWrites.put(client, System.nanoTime());
+    }
+
+    public boolean wroteRecently(String client) {
+        Long writtenAt = lastWrites.get(client);
+        return writtenAt != null && System.nanoTime() - writtenAt <= windowNanos;
+    }
+
+    /**
+     * @param writtenAt Epoch millis of a write, as recorded on any instance.
+     */
+    public boolean isWithinWindow(long writtenAt) {
+        return Math.abs(System.currentTimeMillis() - writtenAt) <= window.toMillis();
+    }
+
+    /**
+     * Forgets the clients whose window has passed.
+     *
+     * @return The number of clients still tracked.
+     */
+    public int evictExpiredWrites() {
+        long now = System.nanoTime();
+        lastWrites.values().removeIf(writtenAt -> now - writtenAt > windowNanos);
+        return lastWrites.size();
+    }
+
+    /**
+     * Sends the reads of the current thread to the primary until {@link #unpin()}.
+     */
+    public void pinToPrimary() {
+        pinned.set(Boolean.TRUE);
+    }
+
+    public void unpin() {
+        pinned.remove();
+    }
+
+    public boolean isPinnedToPrimary() {
+        return pinned.get() != null;
+    }
+}
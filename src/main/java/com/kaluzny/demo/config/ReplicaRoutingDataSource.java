@@ -0,0 +1,199 @@
+package com.kaluzny.demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to the replicas and everything else to the primary.
+ * <p>
+ * The physical connection is fetched lazily, on the first statement of a transaction, when the
+ * read-only flag of the transaction is already known. Replicas are checked in the background and
+ * skipped while they cannot be reached or lag behind the primary by more than the allowed lag;
+ * with no usable replica, reads go to the primary. Threads pinned by {@link ReadYourWrites}
+ * always read from the primary.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+    /**
+     * A replica that has replayed everything the primary had written has no lag, even if the last
+     * replayed transaction is old; otherwise the lag is the age of the last replayed transaction.
+     */
+    private static final String LAG_QUERY = """
+            SELECT pg_is_in_recovery(),
+                   COALESCE(pg_wal_lsn_diff(?::pg_lsn, pg_last_wal_replay_lsn()), 0),
+                   COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0)
+            """;
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final ReadYourWrites readYourWrites;
+    private final double maxLagSeconds;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Counter primaryConnections;
+    private final Counter replicaConnections;
+    private final ScheduledExecutorService lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-lag-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+                                    ReadYourWrites readYourWrites, Duration maxLag, Duration lagCheckInterval,
+                                    MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.readYourWrites = readYourWrites;
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+        this.primaryConnections = Counter.builder("automobile.datasource.connections")
+                .tag("target", "primary")
+                .description("Connections handed out by the routing data source")
+                .register(meterRegistry);
+        this.replicaConnections = Counter.builder("automobile.datasource.connections")
+                .tag("target", "replica")
+                .description("Connections handed out by the routing data source")
+                .register(meterRegistry);
+        this.replicas.forEach(replica -> Gauge.builder("automobile.datasource.replica.lag", replica, r -> r.lagSeconds)
+                .tag("replica", replica.name())
+                .description("Replication lag in seconds, NaN while the replica cannot be reached")
+                .baseUnit("seconds")
+                .register(meterRegistry));
+
+        setTargetDataSource(new Router());
+        lagChecker.scheduleWithFixedDelay(this::checkLag, 0, lagCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The connection pools of the primary and of the replicas.
+     */
+    public List<HikariDataSource> getPools() {
+        List<HikariDataSource> pools = new ArrayList<>();
+        pools.add(primary);
+        replicas.forEach(replica -> pools.add(replica.dataSource));
+        return pools;
+    }
+
+    @Override
+    public void close() {
+        lagChecker.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+        primary.close();
+    }
+
+    private void checkLag() {
+        String primaryLsn;
+        try (Connection connection = primary.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT pg_current_wal_lsn()::text")) {
+            resultSet.next();
+            primaryLsn = resultSet.getString(1);
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Cannot read the WAL position of the primary: {}", e.getMessage());
+            return;
+        }
+        replicas.forEach(replica -> replica.check(primaryLsn, maxLagSeconds));
+    }
+
+    /**
+     * Round robin over the usable replicas.
+     */
+    private Replica nextUsableReplica() {
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.usable) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private final class Router extends AbstractDataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !readYourWrites.isPinnedToPrimary()) {
+                Replica replica = nextUsableReplica();
+                if (replica != null) {
+                    try {
+                        Connection connection = replica.dataSource.getConnection();
+                        replicaConnections.increment();
+                        return connection;
+                    } catch (SQLException e) {
+                        replica.markUnreachable(e);
+                    }
+                }
+            }
+            primaryConnections.increment();
+            return primary.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return primary.getConnection(username, password);
+        }
+    }
+
+    private static final class Replica {
+
+        private final HikariDataSource dataSource;
+        private volatile boolean usable;
+        private volatile double lagSeconds = Double.NaN;
+
+        Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        String name() {
+            return dataSource.getPoolName();
+        }
+
+        void check(String primaryLsn, double maxLagSeconds) {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(LAG_QUERY)) {
+                statement.setString(1, primaryLsn);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    boolean inRecovery = resultSet.getBoolean(1);
+                    boolean behind = resultSet.getDouble(2) > 0;
+                    lagSeconds = inRecovery && behind ? resultSet.getDouble(3) : 0;
+                }
+            } catch (SQLException | RuntimeException e) {
+                markUnreachable(e);
+                return;
+            }
+            boolean nowUsable = lagSeconds <= maxLagSeconds;
+            if (nowUsable != usable) {
+                log.info("Replica {} {}, lag {} s", name(), nowUsable ? "is usable" : "lags behind", lagSeconds);
+            }
+            usable = nowUsable;
+        }
+
+        void markUnreachable(Exception e) {
+            if (usable) {
+                log.warn("Replica {} cannot be reached, reading from the primary: {}", name(), e.getMessage());
+            }
+            usable = false;
+            lagSeconds = Double.NaN;
+        }
+    }
+}
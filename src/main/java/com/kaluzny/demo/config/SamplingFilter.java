@@ -0,0 +1,229 @@
+package com.kaluzny.demo.config;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
+import org.apache.logging.log4j.message.Message;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Log4j2 filter that keeps on average one of every n events of a logger category, the events of other loggers pass.
+ * A category is a logger name and covers the loggers below it, e.g. {@code com.kaluzny.demo.listener};
+ * events more severe than the {@code level} of the filter, by default WARN and ERROR, are never dropped.
+ * <p>
+ * Declared as a filter of the whole configuration in {@code log4j2-spring.xml}, so dropped events are discarded
+ * before their message is formatted. The categories live outside the filter and survive reconfigurations,
+ * they are set at startup from {@code automobile.logging.sampling} and at runtime through {@code /actuator/logsampling}.
+ * <p>
+ * Checking an event does not allocate: every overload of {@link Filter} is implemented, so parameters are not
+ * copied into an array, and the sampler of a logger is looked up in a cache.
+ */
+@Plugin(name = "Sampling", category = Node.CATEGORY, elementType = Filter.ELEMENT_TYPE, printObject = true)
+public final class SamplingFilter extends AbstractFilter {
+
+    private static volatile Categories categories = new Categories(Map.of());
+
+    private final Level level;
+
+    private SamplingFilter(Level level) {
+        super(Result.NEUTRAL, Result.DENY);
+        this.level = level;
+    }
+
+    /**
+     * @param level Events of this level and less severe ones are sampled, INFO if not set.
+     */
+    @PluginFactory
+    public static SamplingFilter createFilter(@PluginAttribute("level") Level level) {
+        return new SamplingFilter(level == null ? Level.INFO : level);
+    }
+
+    /**
+     * Keeps one of every {@code every} events of the category from now on, 1 or less keeps all of them.
+     */
+    public static synchronized void setEvery(String category, int every) {
+        Map<String, Integer> changed = new TreeMap<>(getCategories());
+        if (every > 1) {
+            changed.put(category, every);
+        } else {
+            changed.remove(category);
+        }
+        categories = new Categories(changed);
+    }
+
+    /**
+     * @return How many events of every sampled category make one that is logged.
+     */
+    public static Map<String, Integer> getCategories() {
+        Map<String, Integer> every = new TreeMap<>();
+        categories.samplers.forEach((category, sampler) -> every.put(category, sampler.every));
+        return every;
+    }
+
+    private Result sample(Logger logger, Level eventLevel) {
+        // filters of the configuration see an event before its level is checked, the disabled ones are left out
+        if (eventLevel.intLevel() > logger.getLevel().intLevel()) {
+            return onMatch;
+        }
+        return sample(logger.getName(), eventLevel);
+    }
+
+    private Result sample(String loggerName, Level eventLevel) {
+        if (eventLevel.intLevel() < level.intLevel()) {
+            return onMatch;
+        }
+        return categories.sampler(loggerName).sample() ? onMatch : onMismatch;
+    }
+
+    @Override
+    public Result filter(LogEvent event) {
+        return sample(event.getLoggerName(), event.getLevel());
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, Message msg, Throwable t) {
+        return msg == null ? onMatch : sample(logger, level);
+    }
+
+    /**
+     * Also called without a message by {@code isInfoEnabled()} and the like, those checks are not counted.
+     */
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, Object msg, Throwable t) {
+        return msg == null ? onMatch : sample(logger, level);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object... params) {
+        return msg == null ? onMatch : sample(logger, level);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0) {
+        return sample(logger, level);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1) {
+        return sample(logger, level);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2) {
+        return sample(logger, level);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3) {
+        return sample(logger, level);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4) {
+        return sample(logger, level);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4, Object p5) {
+        return sample(logger, level);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4, Object p5, Object p6) {
+        return sample(logger, level);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4, Object p5, Object p6, Object p7) {
+        return sample(logger, level);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4, Object p5, Object p6, Object p7, Object p8) {
+        return sample(logger, level);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2,
+                         Object p3, Object p4, Object p5, Object p6, Object p7, Object p8, Object p9) {
+        return sample(logger, level);
+    }
+
+    @Override
+    public String toString() {
+        return "level=" + level + ", categories=" + getCategories();
+    }
+
+    private static final class Sampler {
+
+        static final Sampler ALL = new Sampler(1);
+
+        final int every;
+
+        Sampler(int every) {
+            this.every = every;
+        }
+
+        /**
+         * Random rather than every n-th event: threads do not contend on a counter, and events logged in pairs,
+         * e.g. the start and the end of a call, do not always lose the same one of the pair.
+         */
+        boolean sample() {
+            return every <= 1 || ThreadLocalRandom.current().nextInt(every) == 0;
+        }
+    }
+
+    /**
+     * The samplers of the categories and, per logger name, the sampler of its closest category. Replaced as
+     * a whole when a category changes, so a logger never keeps the sampler of an old setting.
+     */
+    private static final class Categories {
+
+        final Map<String, Sampler> samplers = new ConcurrentHashMap<>();
+        final Map<String, Sampler> byLogger = new ConcurrentHashMap<>();
+
+        Categories(Map<String, Integer> every) {
+            every.forEach((category, n) -> samplers.put(category, new Sampler(n)));
+        }
+
+        Sampler sampler(String loggerName) {
+            Sampler sampler = byLogger.get(loggerName);
+            if (sampler == null) {
+                sampler = byLogger.computeIfAbsent(loggerName, this::closest);
+            }
+            return sampler;
+        }
+
+        private Sampler closest(String loggerName) {
+            String name = loggerName;
+            while (true) {
+                Sampler sampler = samplers.get(name);
+                if (sampler != null) {
+                    return sampler;
+                }
+                int dot = name.lastIndexOf('.');
+                if (dot < 0) {
+                    return Sampler.ALL;
+                }
+                name = name.substring(0, dot);
+            }
+        }
+    }
+}
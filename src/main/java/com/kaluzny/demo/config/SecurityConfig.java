@@ -1,22 +1,60 @@
 package com.kaluzny.demo.config;
 
+import com.kaluzny.demo.web.RateLimitingFilter;
+import com.kaluzny.demo.web.ReadYourWritesFilter;
+import com.kaluzny.demo.web.RateLimitingFilter.EndpointClass;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.oauth2.server.resource.web.authentication.BearerTokenAuthenticationFilter;
 import org.springframework.security.web.SecurityFilterChain;
 
+import java.util.Map;
+
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity
 class SecurityConfig {
 
     private final JwtConverter jwtConverter;
+    private final MeterRegistry meterRegistry;
+    private final ReadYourWrites readYourWrites;
+
+    @Value("${automobile.rate-limit.enabled:true}")
+    private boolean rateLimitEnabled;
+
+    @Value("${automobile.rate-limit.capacity:50}")
+    private long rateLimitCapacity;
+
+    @Value("${automobile.rate-limit.refill-per-second:20}")
+    private long rateLimitRefillPerSecond;
+
+    @Value("${automobile.rate-limit.concurrency.by-id:0}")
+    private int byIdConcurrency;
 
-    public SecurityConfig(JwtConverter jwtConverter) {
+    @Value("${automobile.rate-limit.concurrency.scan:0}")
+    private int scanConcurrency;
+
+    @Value("${automobile.rate-limit.concurrency.write:0}")
+    private int writeConcurrency;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int primaryPoolSize;
+
+    private RateLimitingFilter rateLimitingFilter;
+
+    public SecurityConfig(JwtConverter jwtConverter, MeterRegistry meterRegistry, ReadYourWrites readYourWrites) {
         this.jwtConverter = jwtConverter;
+        this.meterRegistry = meterRegistry;
+        this.readYourWrites = readYourWrites;
     }
 
     @Bean
@@ -32,6 +70,53 @@ class SecurityConfig {
                         session.sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 );
 
+        // the actuator endpoints start recordings, change log sampling and show queries, health stays open for the probes;
+        // the API is secured per method
+        http
+                .authorizeHttpRequests(requests -> requests
+                        .requestMatchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+                        .requestMatchers(EndpointRequest.toAnyEndpoint()).hasRole("ADMIN")
+                        .anyRequest().permitAll()
+                );
+
+        if (rateLimitEnabled) {
+            rateLimitingFilter = rateLimitingFilter();
+            http.addFilterAfter(rateLimitingFilter, BearerTokenAuthenticationFilter.class);
+        }
+        if (readYourWrites.isEnabled()) {
+            http.addFilterAfter(new ReadYourWritesFilter(readYourWrites), BearerTokenAuthenticationFilter.class);
+        }
+
         return http.build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Not a bean on purpose, like {@link ReadYourWritesFilter}: a Filter bean would also be registered in the servlet container,
+     * where it runs before authentication and cannot see the JWT principal.
+     */
+    private RateLimitingFilter rateLimitingFilter() {
+        return new RateLimitingFilter(rateLimitCapacity, rateLimitRefillPerSecond,
+                Map.of(EndpointClass.BY_ID, concurrencyLimit(byIdConcurrency, 2),
+                        EndpointClass.SCAN, concurrencyLimit(scanConcurrency, 8),
+                        EndpointClass.WRITE, concurrencyLimit(writeConcurrency, 4)),
+                meterRegistry);
+    }
+
+    /**
+     * Limits not configured are a share of the primary pool: half of it for look-ups by id, a quarter for writes
+     * and an eighth for scans, so together they leave connections to the background work, e.g. the listeners,
+     * and a burst of scans cannot take the connections of the cheap calls.
+     *
+     * @param divisor The pool size is divided by it, the limit is at least 1.
+     */
+    private int concurrencyLimit(int configured, int divisor) {
+        return configured > 0 ? configured : Math.max(1, primaryPoolSize / divisor);
+    }
+
+    @Scheduled(fixedDelayString = "${automobile.rate-limit.evict-interval:PT1M}")
+    void evictIdleClients() {
+        if (rateLimitingFilter != null) {
+            rateLimitingFilter.evictIdleClients();
+        }
+    }
+}
@@ -12,6 +12,7 @@ import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
@@ -23,10 +24,10 @@ import java.util.UUID;
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
-public class Automobile {
+public class Automobile implements Serializable {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @TimeOrderedUuid
     private UUID id;
 
     @Size(max = 50)
@@ -52,6 +53,12 @@ public class Automobile {
 
     private Boolean deleted = Boolean.FALSE;
 
+    /**
+     * Increased by every change, events on AutoTopic carry it so consumers can tell newer changes from older ones.
+     */
+    @Version
+    private Long version;
+
     public void checkColor(Automobile automobile) {
         if (automobile.color != null && !automobile.color.equals(this.color)) {
             this.originalColor = false;
@@ -2,7 +2,6 @@ package com.kaluzny.demo.domain;
 
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
@@ -19,28 +18,91 @@ public interface AutomobileRepository extends JpaRepository<Automobile, Long> {
             """, nativeQuery = true)
     List<Automobile> findAllExists();
 
+    /**
+     * @return The removed automobile, empty if there is no such automobile or it was removed before.
+     */
     @Transactional
-    @Modifying(clearAutomatically = true, flushAutomatically = true)
-    @Query(value = "UPDATE automobile SET deleted = TRUE WHERE id = ?1", nativeQuery = true)
-    void markRemoved(UUID id);
+    @Query(value = """
+            UPDATE automobile SET deleted = TRUE, update_date = now(), version = version + 1
+            WHERE id = ?1 AND creation_date BETWEEN automobile_created_from(?1) AND automobile_created_to(?1)
+              AND deleted IS FALSE
+            RETURNING *
+            """, nativeQuery = true)
+    Optional<Automobile> markRemoved(UUID id);
 
+    /**
+     * @return The updated automobile, empty if there is no such automobile or it was removed.
+     */
+    @Transactional
     @Query(value = """
-            UPDATE automobile SET name = :name, color = :color, is_original_color = :originalColor WHERE id = :id
+            UPDATE automobile SET name = :name, color = :color, is_original_color = :originalColor,
+                                  update_date = now(), version = version + 1
+            WHERE id = :id AND creation_date BETWEEN automobile_created_from(:id) AND automobile_created_to(:id)
+              AND deleted IS FALSE
+            RETURNING *
             """, nativeQuery = true)
-    Automobile updateAutomobile(String name, String color, Boolean originalColor, UUID id);
+    Optional<Automobile> updateAutomobile(String name, String color, Boolean originalColor, UUID id);
 
-    @Query(value = "SELECT * FROM automobile WHERE name = :name", nativeQuery = true)
+    @Query(value = "SELECT * FROM automobile WHERE name = :name AND deleted IS FALSE", nativeQuery = true)
     List<Automobile> findByName(String name);
 
-    @Query(value = "SELECT * FROM automobile WHERE color = :color", nativeQuery = true)
+    @Query(value = "SELECT * FROM automobile WHERE color = :color AND deleted IS FALSE", nativeQuery = true)
     List<Automobile> findByColor(String color);
 
-    @Query(value = "SELECT * FROM automobile WHERE name = :name AND color = :color", nativeQuery = true)
+    @Query(value = """
+            SELECT * FROM automobile WHERE name = :name AND color = :color AND deleted IS FALSE
+            """, nativeQuery = true)
     List<Automobile> findByNameAndColor(String name, String color);
 
-    @Query(value = "SELECT * FROM automobile WHERE color LIKE :colorStartWith", nativeQuery = true)
+    /**
+     * @return The page of the live automobiles whose color matches, ordered by color and then by id
+     * like {@code AutomobileReadModel#findByColorStartsWith}.
+     */
+    @Query(value = """
+            SELECT * FROM automobile WHERE color LIKE :colorStartWith AND deleted IS FALSE
+            ORDER BY color COLLATE "C", id
+            """, nativeQuery = true)
     List<Automobile> findByColorStartsWith(String colorStartWith, Pageable page);
 
-    @Query(value = "SELECT * FROM automobile WHERE id = :id", nativeQuery = true)
+    /**
+     * Looks in the partitions around the time embedded in a UUIDv7 id only, in all of them for other ids.
+     */
+    @Query(value = """
+            SELECT * FROM automobile
+            WHERE id = :id AND creation_date BETWEEN automobile_created_from(:id) AND automobile_created_to(:id)
+            """, nativeQuery = true)
     Optional<Automobile> findById(UUID id);
+
+    /**
+     * Substring and typo-tolerant search on name and color, served by the trigram index.
+     * The best maxCandidates substring matches and as many similar ones are ranked, substring matches first;
+     * pages continue after the (score, id) of the last row. The candidates are picked by the same order as the
+     * ranking, so every page of a search ranks the same rows.
+     * <p>
+     * Only the first maxScanned matches of each kind, in the order the index finds them, are scored: a query
+     * matching a large share of the table costs as much as one matching maxScanned rows and ranks a part of its
+     * matches, the same part on every page while the table does not change.
+     */
+    @Query(value = """
+            SELECT id, name, color, is_original_color AS "originalColor", score
+            FROM (SELECT id, name, color, is_original_color,
+                         CAST(word_similarity(:query, automobile_search_text(name, color))
+                             + CASE WHEN automobile_search_text(name, color) ILIKE :pattern THEN 1 ELSE 0 END AS float8) AS score
+                  FROM ((SELECT * FROM (SELECT * FROM automobile
+                                         WHERE deleted IS FALSE AND automobile_search_text(name, color) ILIKE :pattern
+                                         LIMIT :maxScanned) scanned
+                         ORDER BY word_similarity(:query, automobile_search_text(name, color)) DESC, id DESC
+                         LIMIT :maxCandidates)
+                        UNION
+                        (SELECT * FROM (SELECT * FROM automobile
+                                         WHERE deleted IS FALSE AND :query <% automobile_search_text(name, color)
+                                         LIMIT :maxScanned) scanned
+                         ORDER BY word_similarity(:query, automobile_search_text(name, color)) DESC, id DESC
+                         LIMIT :maxCandidates)) candidates) hits
+            WHERE (score, id) < (:afterScore, :afterId)
+            ORDER BY score DESC, id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<AutomobileSearchHit> search(String query, String pattern, int maxScanned, int maxCandidates,
+                                     double afterScore, UUID afterId, int limit);
 }
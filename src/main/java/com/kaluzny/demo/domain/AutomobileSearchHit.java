@@ -0,0 +1,19 @@
+package com.kaluzny.demo.domain;
+
+import java.util.UUID;
+
+/**
+ * A row of {@link AutomobileRepository#search}, with its rank.
+ */
+public interface AutomobileSearchHit {
+
+    UUID getId();
+
+    String getName();
+
+    String getColor();
+
+    Boolean getOriginalColor();
+
+    Double getScore();
+}
@@ -2,6 +2,7 @@ package com.kaluzny.demo.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 
+import java.io.Serializable;
 import java.util.UUID;
 
 @Schema(name = "AutoResponseDto", description = "Data object for automobile response")
@@ -17,5 +18,5 @@ public record AutoResponseDto(
 
         @Schema(description = "Flag indicating whether the color is original.", example = "true")
         Boolean originalColor
-) {
+) implements Serializable {
 }
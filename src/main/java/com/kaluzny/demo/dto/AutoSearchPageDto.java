@@ -0,0 +1,15 @@
+package com.kaluzny.demo.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Collection;
+
+@Schema(name = "AutoSearchPageDto", description = "Data object for a page of automobile search results")
+public record AutoSearchPageDto(
+        @Schema(description = "Matching automobiles, best matches first.")
+        Collection<AutoResponseDto> automobiles,
+
+        @Schema(description = "Cursor of the next page, absent on the last page.", example = "MS41LDhhZjQ1...")
+        String nextCursor
+) {
+}
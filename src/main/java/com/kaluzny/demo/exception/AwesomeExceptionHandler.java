@@ -1,5 +1,6 @@
 package com.kaluzny.demo.exception;
 
+import lombok.Getter;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -19,6 +20,22 @@ public class AwesomeExceptionHandler extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(new AwesomeException("This auto was deleted"), HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(InvalidSearchQueryException.class)
+    public ResponseEntity<AwesomeException> handleInvalidSearchQueryException(InvalidSearchQueryException e) {
+        return new ResponseEntity<>(new AwesomeException(e.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(IngestionBufferIsFullException.class)
+    public ResponseEntity<AwesomeException> handleIngestionBufferIsFullException() {
+        return new ResponseEntity<>(new AwesomeException("Too many automobiles waiting to be saved, retry later"), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler(IngestionIsStoppedException.class)
+    public ResponseEntity<AwesomeException> handleIngestionIsStoppedException() {
+        return new ResponseEntity<>(new AwesomeException("The service is shutting down, retry later"), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @Getter
     private static class AwesomeException {
         String message;
 
@@ -0,0 +1,4 @@
+package com.kaluzny.demo.exception;
+
+public class IngestionBufferIsFullException extends RuntimeException {
+}
@@ -0,0 +1,61 @@
+package com.kaluzny.demo.jfr;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.TextMessage;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.springframework.jms.core.JmsTemplate;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A message sent to a JMS topic, see {@link #publish(JmsTemplate, String, Object)}.
+ */
+@Name("com.kaluzny.demo.JmsPublish")
+@Label("JMS Publish")
+@Category({"Automobile", "JMS"})
+@Description("A message converted and sent to a JMS topic")
+@StackTrace(false)
+public class JmsPublishEvent extends Event {
+
+    @Label("Topic")
+    public String topic;
+
+    @Label("Payload")
+    @Description("Size of the message body, 0 for objects handed to an embedded broker without serializing them")
+    @DataAmount
+    public long payloadBytes;
+
+    /**
+     * Converts and sends the payload to the topic like {@link JmsTemplate#convertAndSend(String, Object)},
+     * recording the send as an event.
+     */
+    public static void publish(JmsTemplate jmsTemplate, String topic, Object payload) {
+        JmsPublishEvent event = new JmsPublishEvent();
+        event.begin();
+        try {
+            jmsTemplate.convertAndSend(topic, payload, message -> {
+                if (event.isEnabled()) {
+                    event.payloadBytes = sizeOf(message);
+                }
+                return message;
+            });
+        } finally {
+            event.topic = topic;
+            event.commit();
+        }
+    }
+
+    private static long sizeOf(Message message) throws JMSException {
+        if (message instanceof TextMessage text && text.getText() != null) {
+            return text.getText().getBytes(StandardCharsets.UTF_8).length;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,29 @@
+package com.kaluzny.demo.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A message handled by a JMS listener, recorded by {@code FlightRecorderAspect}.
+ */
+@Name("com.kaluzny.demo.MessageHandled")
+@Label("JMS Message Handled")
+@Category({"Automobile", "JMS"})
+@Description("A message handled by a JMS listener of the app")
+@StackTrace(false)
+public class MessageHandledEvent extends Event {
+
+    @Label("Listener")
+    public String listener;
+
+    @Label("Destination")
+    public String destination;
+
+    @Label("Automobiles")
+    @Description("Automobiles in the message")
+    public long automobiles;
+}
@@ -0,0 +1,27 @@
+package com.kaluzny.demo.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A call of an {@code AutomobileRepository} method, recorded by {@code FlightRecorderAspect}.
+ */
+@Name("com.kaluzny.demo.RepositoryQuery")
+@Label("Repository Query")
+@Category({"Automobile", "Database"})
+@Description("A query of the automobile repository, including the transaction it opens on its own")
+@StackTrace(false)
+public class RepositoryQueryEvent extends Event {
+
+    @Label("Query")
+    @Description("The repository method")
+    public String query;
+
+    @Label("Rows")
+    @Description("Entities returned or rows changed, -1 if the result is not countable")
+    public long rows;
+}
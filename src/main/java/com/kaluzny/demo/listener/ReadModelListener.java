@@ -0,0 +1,36 @@
+package com.kaluzny.demo.listener;
+
+import com.kaluzny.demo.domain.Automobile;
+import com.kaluzny.demo.service.AutomobileReadModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Applies the automobile events on {@code AutoTopic} to the {@link AutomobileReadModel}, one at a time and in order,
+ * and rebuilds it when {@code AutoTopicReset} reports that all automobiles were removed.
+ */
+@Slf4j
+@Component
+public class ReadModelListener {
+
+    private final AutomobileReadModel readModel;
+
+    public ReadModelListener(AutomobileReadModel readModel) {
+        this.readModel = readModel;
+    }
+
+    @JmsListener(destination = "AutoTopic", containerFactory = "automobileJmsContFactory")
+    public void onAutomobileEvent(Automobile automobile) {
+        readModel.apply(automobile);
+    }
+
+    /**
+     * @param removedAt The time all automobiles were removed.
+     */
+    @JmsListener(destination = "AutoTopicReset", containerFactory = "automobileJmsContFactory")
+    public void onReset(String removedAt) {
+        log.info("Rebuilding the automobile read model, all automobiles were removed at {}", removedAt);
+        readModel.reset();
+    }
+}
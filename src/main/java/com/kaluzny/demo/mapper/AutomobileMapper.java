@@ -27,7 +27,8 @@ public class AutomobileMapper {
                 LocalDateTime.now(),
                 LocalDateTime.now(),
                 requestDto.originalColor(),
-                false
+                false,
+                null
         );
     }
 }
@@ -0,0 +1,368 @@
+package com.kaluzny.demo.service;
+
+import com.kaluzny.demo.config.ReadYourWrites;
+import com.kaluzny.demo.domain.Automobile;
+import com.kaluzny.demo.dto.AutoResponseDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * In-memory read model of the automobiles: lists and counts per name and per color, kept up to date
+ * by the events on {@code AutoTopic}, so the name and color reads do not query the database.
+ * <p>
+ * Every event carries the full state and the version of one automobile. An event is applied only if its version
+ * is newer than the one seen before for the automobile, so redelivered and out-of-date events change nothing;
+ * removed automobiles stay as tombstones for that reason.
+ * <p>
+ * {@link #rebuild()} loads a snapshot of the table from the primary database. Events that arrive meanwhile
+ * are replayed onto the new model before it replaces the live one: every change committed after the snapshot
+ * was taken is published after it as well. Until the first rebuild completes the reads go to the database.
+ */
+@Slf4j
+@Component
+public class AutomobileReadModel {
+
+    private static final String SNAPSHOT = "SELECT id, name, color, is_original_color, deleted, version FROM automobile";
+    private static final int SNAPSHOT_FETCH_SIZE = 10_000;
+
+    /**
+     * The order of PostgreSQL's uuid type, the bytes compared unsigned, unlike {@link UUID#compareTo}.
+     */
+    private static final Comparator<UUID> ID_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate snapshotTransaction;
+    private final ReadYourWrites readYourWrites;
+    private final boolean enabled;
+    private final Counter applied;
+    private final Counter stale;
+
+    private volatile Views views = new Views();
+    private volatile boolean ready;
+
+    /**
+     * Events received while a rebuild is running, null otherwise. Guarded by this.
+     */
+    private List<Automobile> receivedDuringRebuild;
+
+    /**
+     * Whether the running rebuild may have read the table before all automobiles were removed. Guarded by this.
+     */
+    private boolean resetDuringRebuild;
+
+    public AutomobileReadModel(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                               ReadYourWrites readYourWrites, MeterRegistry meterRegistry,
+                               @Value("${automobile.read-model.enabled:false}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setReadOnly(true);
+        this.readYourWrites = readYourWrites;
+        this.enabled = enabled;
+        this.applied = Counter.builder("automobile.read-model.events")
+                .tag("result", "applied")
+                .description("Automobile events applied to the read model")
+                .register(meterRegistry);
+        this.stale = Counter.builder("automobile.read-model.events")
+                .tag("result", "stale")
+                .description("Automobile events ignored by the read model, it had seen the same or a newer version")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true once the model is loaded and can serve reads.
+     */
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * @return true if the model is loaded and the current thread is not pinned to the primary by
+     * {@link ReadYourWrites}: the event of a write the client just made may not have been applied yet.
+     */
+    public boolean servesCurrentRead() {
+        return isReady() && !readYourWrites.isPinnedToPrimary();
+    }
+
+    public synchronized boolean isRebuilding() {
+        return receivedDuringRebuild != null;
+    }
+
+    /**
+     * Applies the event of a created, changed or removed automobile.
+     */
+    public void apply(Automobile event) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (views.apply(event)) {
+                applied.increment();
+            } else {
+                stale.increment();
+            }
+            if (receivedDuringRebuild != null) {
+                receivedDuringRebuild.add(event);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the model after all automobiles were removed, by this or another instance. The removal publishes
+     * no events per automobile; a rebuild that is running may have read the table before it, so another one follows.
+     */
+    public void reset() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (receivedDuringRebuild != null) {
+                resetDuringRebuild = true;
+                return;
+            }
+        }
+        rebuild();
+    }
+
+    /**
+     * Replaces the model with one loaded from the primary database, the live one keeps serving meanwhile.
+     *
+     * @return false if a rebuild is running already.
+     */
+    public boolean rebuild() {
+        if (!enabled) {
+            return false;
+        }
+        synchronized (this) {
+            if (receivedDuringRebuild != null) {
+                return false;
+            }
+            receivedDuringRebuild = new ArrayList<>();
+        }
+        long started = System.nanoTime();
+        List<SnapshotRow> snapshot = new ArrayList<>();
+        // one instance of every name and color instead of one per row
+        Map<String, String> strings = new HashMap<>();
+        try {
+            readYourWrites.pinToPrimary();
+            snapshotTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(SNAPSHOT);
+                statement.setFetchSize(SNAPSHOT_FETCH_SIZE);
+                return statement;
+            }, row -> {
+                UUID id = row.getObject("id", UUID.class);
+                snapshot.add(new SnapshotRow(id, row.getLong("version"), row.getBoolean("deleted") ? null : new AutoResponseDto(
+                        id, dedupe(strings, row.getString("name")), dedupe(strings, row.getString("color")),
+                        (Boolean) row.getObject("is_original_color"))));
+            }));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                receivedDuringRebuild = null;
+                resetDuringRebuild = false;
+            }
+            throw e;
+        } finally {
+            readYourWrites.unpin();
+        }
+
+        // indexed outside the transaction and in id order, the skip lists of the indexes only grow at their end
+        snapshot.sort(Comparator.comparing(SnapshotRow::id, ID_ORDER));
+        Views rebuilt = new Views();
+        snapshot.forEach(row -> rebuilt.apply(row.id(), row.version(), row.automobile()));
+        snapshot.clear();
+
+        int replayed;
+        boolean reset;
+        synchronized (this) {
+            receivedDuringRebuild.forEach(rebuilt::apply);
+            replayed = receivedDuringRebuild.size();
+            receivedDuringRebuild = null;
+            reset = resetDuringRebuild;
+            resetDuringRebuild = false;
+            views = rebuilt;
+            ready = true;
+        }
+        log.info("Rebuilt the automobile read model with {} automobiles and {} events received meanwhile in {} ms",
+                rebuilt.live, replayed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        if (reset) {
+            reset();
+        }
+        return true;
+    }
+
+    private static String dedupe(Map<String, String> strings, String string) {
+        return string == null ? null : strings.computeIfAbsent(string, Function.identity());
+    }
+
+    public List<AutoResponseDto> findByName(String name) {
+        Views current = views;
+        return current.automobiles(current.byName.get(name), automobile -> name.equals(automobile.name()));
+    }
+
+    public List<AutoResponseDto> findByColor(String color) {
+        Views current = views;
+        return current.automobiles(current.byColor.get(color), automobile -> color.equals(automobile.color()));
+    }
+
+    public List<AutoResponseDto> findByNameAndColor(String name, String color) {
+        Views current = views;
+        Set<UUID> withName = current.byName.get(name);
+        Set<UUID> withColor = current.byColor.get(color);
+        if (withName == null || withColor == null) {
+            return List.of();
+        }
+        // scans the automobiles of the name, there are fewer of them than of a color
+        return current.automobiles(withName,
+                automobile -> name.equals(automobile.name()) && color.equals(automobile.color()));
+    }
+
+    /**
+     * @return The page of the automobiles whose color starts with the prefix, ordered by color and then by id
+     * like the database orders them.
+     */
+    public List<AutoResponseDto> findByColorStartsWith(String prefix, int page, int size) {
+        Views current = views;
+        return current.byColor.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values().stream()
+                .flatMap(Set::stream)
+                .map(current.byId::get)
+                .filter(entry -> entry != null && entry.automobile() != null
+                        && entry.automobile().color() != null && entry.automobile().color().startsWith(prefix))
+                .skip((long) page * size)
+                .limit(size)
+                .map(Entry::automobile)
+                .toList();
+    }
+
+    /**
+     * @return The number of live automobiles.
+     */
+    public long count() {
+        return views.live;
+    }
+
+    /**
+     * @return The number of live automobiles of every color.
+     */
+    public Map<String, Long> countByColor() {
+        return new LinkedHashMap<>(views.colorCounts);
+    }
+
+    /**
+     * The prefix of a LIKE pattern of the form {@code prefix%}.
+     *
+     * @return null if the pattern uses any other wildcard or escape.
+     */
+    public static String likePrefix(String pattern) {
+        if (pattern == null || !pattern.endsWith("%")) {
+            return null;
+        }
+        String prefix = pattern.substring(0, pattern.length() - 1);
+        return prefix.contains("%") || prefix.contains("_") || prefix.contains("\\") ? null : prefix;
+    }
+
+    private record SnapshotRow(UUID id, long version, AutoResponseDto automobile) {
+    }
+
+    /**
+     * The state of the automobile, null if it was removed, and the version of it.
+     */
+    private record Entry(AutoResponseDto automobile, long version) {
+    }
+
+    /**
+     * Written by one thread at a time, read concurrently; readers check the entries they find through the indexes,
+     * as the indexes may briefly point to an automobile that no longer matches.
+     */
+    private static final class Views {
+
+        final Map<UUID, Entry> byId = new ConcurrentHashMap<>();
+        final ConcurrentNavigableMap<String, Set<UUID>> byName = new ConcurrentSkipListMap<>();
+        final ConcurrentNavigableMap<String, Set<UUID>> byColor = new ConcurrentSkipListMap<>();
+        final Map<String, Long> colorCounts = new ConcurrentSkipListMap<>();
+        volatile long live;
+
+        boolean apply(Automobile event) {
+            boolean removed = Boolean.TRUE.equals(event.getDeleted());
+            return apply(event.getId(), Objects.requireNonNullElse(event.getVersion(), 0L), removed ? null
+                    : new AutoResponseDto(event.getId(), event.getName(), event.getColor(), event.getOriginalColor()));
+        }
+
+        boolean apply(UUID id, long version, AutoResponseDto automobile) {
+            Entry current = byId.get(id);
+            if (current != null && current.version() >= version) {
+                return false;
+            }
+            byId.put(id, new Entry(automobile, version));
+            if (current != null && current.automobile() != null) {
+                unindex(current.automobile());
+            }
+            if (automobile != null) {
+                index(automobile);
+            }
+            return true;
+        }
+
+        private void index(AutoResponseDto automobile) {
+            live++;
+            if (automobile.name() != null) {
+                byName.computeIfAbsent(automobile.name(), name -> new ConcurrentSkipListSet<>(ID_ORDER)).add(automobile.id());
+            }
+            if (automobile.color() != null) {
+                byColor.computeIfAbsent(automobile.color(), color -> new ConcurrentSkipListSet<>(ID_ORDER)).add(automobile.id());
+                colorCounts.merge(automobile.color(), 1L, Long::sum);
+            }
+        }
+
+        private void unindex(AutoResponseDto automobile) {
+            live--;
+            if (automobile.name() != null) {
+                byName.computeIfPresent(automobile.name(), (name, ids) -> ids.remove(automobile.id()) && ids.isEmpty() ? null : ids);
+            }
+            if (automobile.color() != null) {
+                byColor.computeIfPresent(automobile.color(), (color, ids) -> ids.remove(automobile.id()) && ids.isEmpty() ? null : ids);
+                colorCounts.computeIfPresent(automobile.color(), (color, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+
+        List<AutoResponseDto> automobiles(Collection<UUID> ids, Predicate<AutoResponseDto> matches) {
+            if (ids == null) {
+                return List.of();
+            }
+            return ids.stream()
+                    .map(byId::get)
+                    .filter(entry -> entry != null && entry.automobile() != null && matches.test(entry.automobile()))
+                    .map(Entry::automobile)
+                    .toList();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.kaluzny.demo.service;
 
 import com.kaluzny.demo.dto.AutoRequestDto;
 import com.kaluzny.demo.dto.AutoResponseDto;
+import com.kaluzny.demo.dto.AutoSearchPageDto;
 import org.springframework.http.ResponseEntity;
 
 import java.util.Collection;
@@ -28,4 +29,6 @@ public interface AutomobileService {
 
     Collection<AutoResponseDto> findAutomobileByColorStartsWith(String colorStartsWith, int page, int size);
 
+    AutoSearchPageDto searchAutomobiles(String query, int limit, String cursor);
+
 }
@@ -2,51 +2,92 @@ package com.kaluzny.demo.service;
 
 import com.kaluzny.demo.domain.Automobile;
 import com.kaluzny.demo.domain.AutomobileRepository;
+import com.kaluzny.demo.domain.AutomobileSearchHit;
 import com.kaluzny.demo.dto.AutoRequestDto;
 import com.kaluzny.demo.dto.AutoResponseDto;
+import com.kaluzny.demo.dto.AutoSearchPageDto;
+import com.kaluzny.demo.exception.IngestionBufferIsFullException;
+import com.kaluzny.demo.exception.InvalidSearchQueryException;
 import com.kaluzny.demo.exception.ThereIsNoSuchAutoException;
+import com.kaluzny.demo.jfr.JmsPublishEvent;
 import com.kaluzny.demo.mapper.AutomobileMapper;
 import jakarta.jms.Connection;
 import jakarta.jms.JMSException;
 import jakarta.jms.Topic;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jms.JmsException;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 
+@Slf4j
 @Service
 public class AutomobileServiceImpl implements AutomobileService {
 
+    /**
+     * Shorter queries have no complete trigram, the index cannot narrow down a substring search for them.
+     */
+    private static final int MIN_SEARCH_QUERY_LENGTH = 3;
+    private static final int MAX_SEARCH_QUERY_LENGTH = 50;
+
     private final AutomobileRepository automobileRepository;
     private final AutomobileMapper automobileMapper;
     private final JmsTemplate jmsTemplate;
+    private final SingleFlight singleFlight;
+    private final WriteBehindIngestion writeBehindIngestion;
+    private final AutomobileReadModel readModel;
+    private final int searchMaxLimit;
+    private final int searchMaxCandidates;
+    private final int searchMaxScanned;
 
-    public AutomobileServiceImpl(AutomobileRepository automobileRepository, AutomobileMapper automobileMapper, JmsTemplate jmsTemplate) {
+    public AutomobileServiceImpl(AutomobileRepository automobileRepository, AutomobileMapper automobileMapper,
+                                 JmsTemplate jmsTemplate, SingleFlight singleFlight,
+                                 WriteBehindIngestion writeBehindIngestion, AutomobileReadModel readModel,
+                                 @Value("${automobile.search.max-limit:100}") int searchMaxLimit,
+                                 @Value("${automobile.search.max-candidates:1000}") int searchMaxCandidates,
+                                 @Value("${automobile.search.max-scanned:10000}") int searchMaxScanned) {
         this.automobileRepository = automobileRepository;
         this.automobileMapper = automobileMapper;
         this.jmsTemplate = jmsTemplate;
+        this.singleFlight = singleFlight;
+        this.writeBehindIngestion = writeBehindIngestion;
+        this.readModel = readModel;
+        this.searchMaxLimit = searchMaxLimit;
+        this.searchMaxCandidates = searchMaxCandidates;
+        this.searchMaxScanned = Math.max(searchMaxScanned, searchMaxCandidates);
     }
 
     /**
      * Saves an automobile, pushes a message to a JMS topic, and returns the ID of the saved automobile.
+     * In write-behind ingestion mode the automobile is only accepted here and saved shortly after.
      *
      * @param automobile The details of the automobile to be saved.
-     * @return ResponseEntity containing the ID of the saved automobile, or INTERNAL_SERVER_ERROR if an error occurs.
+     * @return ResponseEntity containing the ID of the saved automobile, ACCEPTED with the ID in write-behind mode,
+     * or INTERNAL_SERVER_ERROR if an error occurs.
+     * @throws IngestionBufferIsFullException if write-behind mode cannot accept more automobiles.
      */
     @Override
     public ResponseEntity<UUID> saveAutomobileAndPushMessage(AutoRequestDto automobile) {
+        if (writeBehindIngestion.isEnabled()) {
+            UUID id = writeBehindIngestion.enqueue(automobileMapper.mapToEntity(automobile));
+            return new ResponseEntity<>(id, HttpStatus.ACCEPTED);
+        }
         try (Connection connection = Objects.requireNonNull(jmsTemplate.getConnectionFactory()).createConnection()) {
             Topic autoTopic = connection.createSession().createTopic("AutoTopic");
             Automobile savedAuto = automobileRepository.save(automobileMapper.mapToEntity(automobile));
 
-            jmsTemplate.convertAndSend(autoTopic, savedAuto);
+            JmsPublishEvent.publish(jmsTemplate, autoTopic.getTopicName(), savedAuto);
 
             return new ResponseEntity<>(savedAuto.getId(), HttpStatus.CREATED);
         } catch (JMSException e) {
@@ -60,10 +101,11 @@ public class AutomobileServiceImpl implements AutomobileService {
      * @return Collection of AutoResponseDto representing all existing automobiles.
      */
     @Override
+    @Transactional(readOnly = true)
     public Collection<AutoResponseDto> getAllAutomobiles() {
-        return automobileRepository.findAllExists()
+        return singleFlight.execute(List.of("getAllAutomobiles"), () -> automobileRepository.findAllExists()
                 .stream().map(automobileMapper::mapToDto)
-                .toList();
+                .toList());
     }
 
     /**
@@ -74,23 +116,29 @@ public class AutomobileServiceImpl implements AutomobileService {
      * @throws ThereIsNoSuchAutoException if the automobile with the specified ID does not exist.
      */
     @Override
+    @Transactional(readOnly = true)
     public AutoResponseDto getAutomobileById(UUID id) {
-        return automobileRepository.findById(id)
+        return singleFlight.execute(List.of("getAutomobileById", id), () -> automobileRepository.findById(id)
                 .map(automobileMapper::mapToDto)
-                .orElseThrow(ThereIsNoSuchAutoException::new);
+                .orElseThrow(ThereIsNoSuchAutoException::new));
     }
 
     /**
-     * Retrieves a collection of automobiles by their name.
+     * Retrieves a collection of automobiles by their name, from the read model once it is loaded,
+     * unless the client wrote just before.
      *
      * @param name The name of the automobiles to retrieve.
      * @return Collection of AutoResponseDto representing automobiles with the specified name.
      */
     @Override
+    @Transactional(readOnly = true)
     public Collection<AutoResponseDto> findAutomobileByName(String name) {
-        return automobileRepository.findByName(name)
+        if (readModel.servesCurrentRead()) {
+            return readModel.findByName(name);
+        }
+        return singleFlight.execute(List.of("findAutomobileByName", name), () -> automobileRepository.findByName(name)
                 .stream().map(automobileMapper::mapToDto)
-                .toList();
+                .toList());
     }
 
     /**
@@ -99,10 +147,13 @@ public class AutomobileServiceImpl implements AutomobileService {
      * @param id         The ID of the automobile to update.
      * @param automobile The updated details of the automobile.
      * @return AutoResponseDto representing the updated automobile.
+     * @throws ThereIsNoSuchAutoException if the automobile does not exist or was removed.
      */
     @Override
     public AutoResponseDto refreshAutomobile(UUID id, AutoRequestDto automobile) {
-        Automobile updatedAuto = automobileRepository.updateAutomobile(automobile.name(), automobile.color(), automobile.originalColor(), id);
+        Automobile updatedAuto = automobileRepository.updateAutomobile(automobile.name(), automobile.color(), automobile.originalColor(), id)
+                .orElseThrow(ThereIsNoSuchAutoException::new);
+        publishChange(updatedAuto);
         return automobileMapper.mapToDto(updatedAuto);
     }
 
@@ -113,32 +164,44 @@ public class AutomobileServiceImpl implements AutomobileService {
      */
     @Override
     public void removeAutomobileById(UUID id) {
-        automobileRepository.markRemoved(id);
+        automobileRepository.markRemoved(id).ifPresent(this::publishChange);
     }
 
     /**
-     * Removes all automobiles from the database.
+     * Removes all automobiles from the database. No events are published for them, a reset on
+     * {@code AutoTopicReset} has the read model of every instance rebuilt instead.
      */
     @Override
     public void removeAllAutomobiles() {
         automobileRepository.deleteAll();
+        try {
+            JmsPublishEvent.publish(jmsTemplate, "AutoTopicReset", Instant.now().toString());
+        } catch (JmsException e) {
+            // the other instances catch up with their next rebuild
+            log.error("Cannot publish the removal of all automobiles", e);
+            readModel.reset();
+        }
     }
 
     /**
-     * Retrieves a collection of automobiles by their color and pushes the collection to a JMS topic.
+     * Retrieves a collection of automobiles by their color, from the read model once it is loaded
+     * unless the client wrote just before, and pushes the collection to a JMS topic.
      *
      * @param color The color of the automobiles to retrieve.
      * @return ResponseEntity containing the collection of retrieved automobiles, or INTERNAL_SERVER_ERROR if an error occurs.
      */
     @Override
+    @Transactional(readOnly = true)
     public ResponseEntity<Collection<AutoResponseDto>> findAutomobileByColor(String color) {
         try (Connection connection = Objects.requireNonNull(jmsTemplate.getConnectionFactory()).createConnection()) {
             Topic autoTopic = connection.createSession().createTopic("AutoTopicList");
-            List<AutoResponseDto> automobiles = automobileRepository.findByColor(color)
-                    .stream().map(automobileMapper::mapToDto)
-                    .toList();
+            List<AutoResponseDto> automobiles = readModel.servesCurrentRead() ? readModel.findByColor(color)
+                    : singleFlight.execute(List.of("findAutomobileByColor", color),
+                    () -> automobileRepository.findByColor(color)
+                            .stream().map(automobileMapper::mapToDto)
+                            .toList());
 
-            jmsTemplate.convertAndSend(autoTopic, automobiles);
+            JmsPublishEvent.publish(jmsTemplate, autoTopic.getTopicName(), automobiles);
 
             return new ResponseEntity<>(automobiles, HttpStatus.OK);
         } catch (JMSException e) {
@@ -147,21 +210,29 @@ public class AutomobileServiceImpl implements AutomobileService {
     }
 
     /**
-     * Retrieves a collection of automobiles by their name and color.
+     * Retrieves a collection of automobiles by their name and color, from the read model once it is loaded,
+     * unless the client wrote just before.
      *
      * @param name  The name of the automobiles to retrieve.
      * @param color The color of the automobiles to retrieve.
      * @return Collection of AutoResponseDto representing automobiles with the specified name and color.
      */
     @Override
+    @Transactional(readOnly = true)
     public Collection<AutoResponseDto> findAutomobileByNameAndColor(String name, String color) {
-        return automobileRepository.findByNameAndColor(name, color)
-                .stream().map(automobileMapper::mapToDto)
-                .toList();
+        if (readModel.servesCurrentRead()) {
+            return readModel.findByNameAndColor(name, color);
+        }
+        return singleFlight.execute(List.of("findAutomobileByNameAndColor", name, color),
+                () -> automobileRepository.findByNameAndColor(name, color)
+                        .stream().map(automobileMapper::mapToDto)
+                        .toList());
     }
 
     /**
      * Retrieves a paged collection of automobiles by their color starting with a specified prefix.
+     * Patterns of the form {@code prefix%} are served by the read model once it is loaded,
+     * unless the client wrote just before.
      *
      * @param colorStartsWith The prefix for the color of the automobiles to retrieve.
      * @param page            The page number for pagination.
@@ -169,10 +240,65 @@ public class AutomobileServiceImpl implements AutomobileService {
      * @return Collection of AutoResponseDto representing paged automobiles with colors starting with the specified prefix.
      */
     @Override
+    @Transactional(readOnly = true)
     public Collection<AutoResponseDto> findAutomobileByColorStartsWith(String colorStartsWith, int page, int size) {
+        String prefix = AutomobileReadModel.likePrefix(colorStartsWith);
+        if (prefix != null && readModel.servesCurrentRead()) {
+            return readModel.findByColorStartsWith(prefix, page, size);
+        }
         Pageable pageable = PageRequest.of(page, size);
-        return automobileRepository.findByColorStartsWith(colorStartsWith, pageable)
-                .stream().map(automobileMapper::mapToDto)
-                .toList();
+        return singleFlight.execute(List.of("findAutomobileByColorStartsWith", colorStartsWith, page, size),
+                () -> automobileRepository.findByColorStartsWith(colorStartsWith, pageable)
+                        .stream().map(automobileMapper::mapToDto)
+                        .toList());
+    }
+
+    /**
+     * Searches automobiles whose name or color contains the query or is similar to it, best matches first.
+     * Only a bounded number of matches is scored and ranked, so a query matching a large part of the table stays fast.
+     *
+     * @param query  The text to search for, 3 to 50 characters.
+     * @param limit  The maximum number of automobiles to return, capped at the configured maximum.
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @return A page of matching automobiles and the cursor of the next page, null on the last page.
+     * @throws InvalidSearchQueryException if the query length is out of bounds or the cursor is malformed.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public AutoSearchPageDto searchAutomobiles(String query, int limit, String cursor) {
+        String trimmed = query == null ? "" : query.trim();
+        if (trimmed.length() < MIN_SEARCH_QUERY_LENGTH || trimmed.length() > MAX_SEARCH_QUERY_LENGTH) {
+            throw new InvalidSearchQueryException("The search query must have "
+                    + MIN_SEARCH_QUERY_LENGTH + " to " + MAX_SEARCH_QUERY_LENGTH + " characters");
+        }
+        int pageSize = Math.max(1, Math.min(limit, searchMaxLimit));
+        SearchCursor after = SearchCursor.decode(cursor);
+
+        return singleFlight.execute(List.of("searchAutomobiles", trimmed, pageSize, after), () -> {
+            List<AutomobileSearchHit> hits = automobileRepository.search(
+                    trimmed, "%" + escapeLikePattern(trimmed) + "%", searchMaxScanned, searchMaxCandidates,
+                    after.score(), after.id(), pageSize);
+            List<AutoResponseDto> automobiles = hits.stream()
+                    .map(hit -> new AutoResponseDto(hit.getId(), hit.getName(), hit.getColor(), hit.getOriginalColor()))
+                    .toList();
+            String nextCursor = hits.size() < pageSize ? null : SearchCursor.after(hits.get(hits.size() - 1)).encode();
+            return new AutoSearchPageDto(automobiles, nextCursor);
+        });
+    }
+
+    /**
+     * Publishes the new state of a changed or removed automobile, the change is committed already.
+     */
+    private void publishChange(Automobile automobile) {
+        try {
+            JmsPublishEvent.publish(jmsTemplate, "AutoTopic", automobile);
+        } catch (JmsException e) {
+            // the read model catches up with its next rebuild
+            log.error("Cannot publish the change of automobile {}", automobile.getId(), e);
+        }
+    }
+
+    private static String escapeLikePattern(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 }
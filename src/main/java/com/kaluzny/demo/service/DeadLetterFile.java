@@ -0,0 +1,52 @@
+package com.kaluzny.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kaluzny.demo.domain.Automobile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Accepted automobiles the database rejected, one JSON line per automobile with the error, written like the records
+ * of the {@link IngestionJournal}. A line is synced before the automobile is dropped from the journal; nothing reads
+ * the file, the automobiles are looked at and saved again by hand.
+ */
+class DeadLetterFile {
+
+    record DeadLetter(long seq, Automobile automobile, String error) {
+    }
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+
+    DeadLetterFile(Path path, ObjectMapper objectMapper) {
+        this.path = path;
+        this.objectMapper = IngestionJournal.withExactDates(objectMapper);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    void append(IngestionJournal.Entry entry, String error) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        byte[] line = (objectMapper.writeValueAsString(new DeadLetter(entry.seq(), entry.automobile(), error)) + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+}
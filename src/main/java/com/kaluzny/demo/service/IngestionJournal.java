@@ -0,0 +1,218 @@
+package com.kaluzny.demo.service;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kaluzny.demo.domain.Automobile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of accepted but not yet committed automobiles, one JSON line per record,
+ * split into segment files named after the sequence number of their first record.
+ * <p>
+ * Appends are serialized by the caller. {@link #awaitDurable(long)} fsyncs in groups: the first caller
+ * forces everything appended so far, the callers waiting behind it usually find their record already durable.
+ * Segments are deleted once all their records are committed.
+ */
+class IngestionJournal implements AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    record Entry(long seq, Automobile automobile) {
+    }
+
+    private record Segment(Path path, long lastSeq) {
+    }
+
+    /**
+     * The API writes the dates of an automobile to the second. The journal keeps them exact: the creation date
+     * is part of the primary key, the replay finds the rows committed before by it.
+     */
+    private abstract static class ExactDates {
+
+        @JsonFormat(shape = JsonFormat.Shape.STRING)
+        abstract LocalDateTime getCreationDate();
+
+        // Lombok copies the format of the field onto the setter
+        @JsonFormat(shape = JsonFormat.Shape.STRING)
+        abstract void setCreationDate(LocalDateTime creationDate);
+
+        @JsonFormat(shape = JsonFormat.Shape.STRING)
+        abstract LocalDateTime getUpdateDate();
+
+        @JsonFormat(shape = JsonFormat.Shape.STRING)
+        abstract void setUpdateDate(LocalDateTime updateDate);
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final ObjectMapper objectMapper;
+    private final List<Segment> closedSegments = new ArrayList<>();
+    private final Object syncLock = new Object();
+
+    private volatile FileChannel channel;
+    private Path channelPath;
+    private volatile long lastAppendedSeq;
+    private long durableSeq;
+
+    IngestionJournal(Path directory, long segmentBytes, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.objectMapper = withExactDates(objectMapper);
+    }
+
+    /**
+     * @return A copy of the mapper that writes the dates of automobiles exactly, like the journal does.
+     */
+    static ObjectMapper withExactDates(ObjectMapper objectMapper) {
+        return objectMapper.copy().addMixIn(Automobile.class, ExactDates.class);
+    }
+
+    /**
+     * Reads the records left over by the previous run. They stay on disk until {@link #release(long)}
+     * confirms they are committed; new records are appended to a new segment.
+     */
+    List<Entry> open() throws IOException {
+        Files.createDirectories(directory);
+        List<Entry> entries = new ArrayList<>();
+        for (Path segment : segments()) {
+            long lastSeq = 0;
+            try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        Entry entry = objectMapper.readValue(line, Entry.class);
+                        entries.add(entry);
+                        lastSeq = Math.max(lastSeq, entry.seq());
+                    } catch (IOException e) {
+                        // a torn last line from a crash during append, its record was never acknowledged
+                        break;
+                    }
+                }
+            }
+            if (lastSeq == 0) {
+                Files.delete(segment);
+                continue;
+            }
+            closedSegments.add(new Segment(segment, lastSeq));
+            lastAppendedSeq = Math.max(lastAppendedSeq, lastSeq);
+        }
+        durableSeq = lastAppendedSeq;
+        openSegment(lastAppendedSeq + 1);
+        return entries;
+    }
+
+    /**
+     * Appends a record, the caller must hold the lock that serializes appends.
+     *
+     * @return The sequence number of the record.
+     */
+    long append(Automobile automobile) {
+        long seq = lastAppendedSeq + 1;
+        try {
+            byte[] line = (objectMapper.writeValueAsString(new Entry(seq, automobile)) + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            lastAppendedSeq = seq;
+            if (channel.size() >= segmentBytes) {
+                roll();
+            }
+            return seq;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to the ingestion journal", e);
+        }
+    }
+
+    /**
+     * Blocks until the record with the given sequence number is on disk.
+     */
+    void awaitDurable(long seq) {
+        synchronized (syncLock) {
+            if (durableSeq >= seq) {
+                return;
+            }
+            long target = lastAppendedSeq;
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot sync the ingestion journal", e);
+            }
+            durableSeq = Math.max(durableSeq, target);
+        }
+    }
+
+    /**
+     * Drops the records up to the given sequence number, the caller must hold the lock that serializes appends.
+     */
+    void release(long committedSeq) {
+        try {
+            closedSegments.removeIf(segment -> segment.lastSeq() <= committedSeq && delete(segment.path()));
+            if (committedSeq >= lastAppendedSeq && channel.size() > 0) {
+                channel.truncate(0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot release the ingestion journal", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private void roll() throws IOException {
+        channel.force(false);
+        synchronized (syncLock) {
+            durableSeq = Math.max(durableSeq, lastAppendedSeq);
+        }
+        FileChannel previous = channel;
+        closedSegments.add(new Segment(channelPath, lastAppendedSeq));
+        openSegment(lastAppendedSeq + 1);
+        previous.close();
+    }
+
+    private void openSegment(long firstSeq) throws IOException {
+        channelPath = directory.resolve(SEGMENT_PREFIX + String.format("%019d", firstSeq) + SEGMENT_SUFFIX);
+        channel = FileChannel.open(channelPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted(Comparator.comparing(path -> path.getFileName().toString()))
+                    .toList();
+        }
+    }
+
+    private static boolean delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.kaluzny.demo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Keeps the monthly partitions of the {@code automobile} table in shape, see {@code V2__Partition_Automobile_Table.sql}:
+ * creates the partitions of the coming months, moves soft-deleted rows to {@code archive.automobile_deleted}
+ * in small batches and, if a retention is configured, detaches partitions older than it into the archive schema
+ * once none of their automobiles is live.
+ * <p>
+ * Every step runs in its own short transaction under an advisory lock, so only one instance works at a time;
+ * partitions are detached one per transaction, as detaching locks the whole {@code automobile} table.
+ */
+@Slf4j
+@Component
+public class PartitionMaintenance {
+
+    private static final String LOCK = "SELECT pg_try_advisory_xact_lock(hashtext('automobile_partition_maintenance'))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${automobile.partitioning.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${automobile.partitioning.archive-deleted-after:1d}")
+    private Duration archiveDeletedAfter;
+
+    @Value("${automobile.partitioning.archive-batch-size:1000}")
+    private int archiveBatchSize;
+
+    @Value("${automobile.partitioning.retention-months:0}")
+    private int retentionMonths;
+
+    @Value("${automobile.partitioning.detach-lock-timeout:5s}")
+    private Duration detachLockTimeout;
+
+    public PartitionMaintenance(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Scheduled(initialDelayString = "${automobile.partitioning.initial-delay:PT1M}",
+            fixedDelayString = "${automobile.partitioning.interval:PT1H}")
+    public void run() {
+        try {
+            int created = locked("SELECT automobile_create_partitions(CURRENT_DATE, ?)", monthsAhead);
+            if (created > 0) {
+                log.info("Created {} automobile partitions", created);
+            }
+
+            int archived = 0;
+            int batch;
+            do {
+                batch = locked("SELECT automobile_archive_deleted(make_interval(secs => ?), ?)",
+                        archiveDeletedAfter.toSeconds(), archiveBatchSize);
+                archived += batch;
+            } while (batch == archiveBatchSize);
+            if (archived > 0) {
+                log.info("Archived {} deleted automobiles", archived);
+            }
+
+            if (retentionMonths > 0) {
+                int detached = 0;
+                for (String partition : jdbcTemplate.queryForList("SELECT automobile_expired_partitions(?)",
+                        String.class, retentionMonths)) {
+                    detached += detach(partition);
+                }
+                if (detached > 0) {
+                    log.info("Detached {} automobile partitions older than {} months", detached, retentionMonths);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Automobile partition maintenance failed", e);
+        }
+    }
+
+    /**
+     * Detaches the partition in a transaction of its own, so {@code automobile} stays locked for the catalog changes
+     * of this partition only. Gives up after the lock timeout instead of queueing the API behind the detach,
+     * the next run tries again.
+     *
+     * @return 1 if the partition was detached.
+     */
+    private int detach(String partition) {
+        try {
+            return locked(detachLockTimeout, "SELECT automobile_detach_partition(?)", partition);
+        } catch (DataAccessException e) {
+            log.warn("Could not detach automobile partition {}, trying again on the next run", partition, e);
+            return 0;
+        }
+    }
+
+    private int locked(String sql, Object... args) {
+        return locked(null, sql, args);
+    }
+
+    /**
+     * @param lockTimeout How long the statements of the transaction wait for a lock, null waits as long as it takes.
+     * @return The result of the maintenance function, 0 if another instance holds the lock.
+     */
+    private int locked(Duration lockTimeout, String sql, Object... args) {
+        Integer result = transactionTemplate.execute(status -> {
+            if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(LOCK, Boolean.class))) {
+                return 0;
+            }
+            if (lockTimeout != null) {
+                jdbcTemplate.queryForObject("SELECT set_config('lock_timeout', ?, true)", String.class,
+                        lockTimeout.toMillis() + "ms");
+            }
+            return jdbcTemplate.queryForObject(sql, Integer.class, args);
+        });
+        return Objects.requireNonNullElse(result, 0);
+    }
+}
@@ -0,0 +1,41 @@
+package com.kaluzny.demo.service;
+
+import com.kaluzny.demo.domain.AutomobileSearchHit;
+import com.kaluzny.demo.exception.InvalidSearchQueryException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Keyset position in the search results: the score and id of the last row of a page,
+ * handed to clients as an opaque URL-safe string.
+ */
+record SearchCursor(double score, UUID id) {
+
+    /**
+     * Sorts before every row, scores are at most 2.
+     */
+    static final SearchCursor FIRST = new SearchCursor(Double.MAX_VALUE, new UUID(-1L, -1L));
+
+    static SearchCursor after(AutomobileSearchHit hit) {
+        return new SearchCursor(hit.getScore(), hit.getId());
+    }
+
+    static SearchCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return FIRST;
+        }
+        try {
+            String[] scoreAndId = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",", 2);
+            return new SearchCursor(Double.parseDouble(scoreAndId[0]), UUID.fromString(scoreAndId[1]));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new InvalidSearchQueryException("Invalid cursor");
+        }
+    }
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((score + "," + id).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,90 @@
+package com.kaluzny.demo.service;
+
+import com.kaluzny.demo.config.ReadYourWrites;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent reads: while a call for a key is in flight,
+ * every other caller with the same key waits for it and shares its result
+ * instead of running its own query.
+ * <p>
+ * Reads pinned to the primary by {@link ReadYourWrites} never join a call in flight,
+ * it may be reading from a replica that has not seen the caller's own write yet.
+ */
+@Component
+public class SingleFlight {
+
+    private final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final ReadYourWrites readYourWrites;
+    private final boolean enabled;
+    private final Counter executed;
+    private final Counter coalesced;
+
+    public SingleFlight(MeterRegistry meterRegistry, ReadYourWrites readYourWrites,
+                        @Value("${automobile.coalescing.enabled:true}") boolean enabled) {
+        this.readYourWrites = readYourWrites;
+        this.enabled = enabled;
+        this.executed = Counter.builder("automobile.requests.coalescing")
+                .tag("result", "executed")
+                .description("Reads that went to the database")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("automobile.requests.coalescing")
+                .tag("result", "coalesced")
+                .description("Reads that shared the result of an identical in-flight read")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the loader for the given key, or joins the call already in flight for it.
+     *
+     * @param key    Identifies the read, e.g. a list of the method name and its arguments.
+     * @param loader Performs the read when no identical call is in flight.
+     * @return The result of the loader, possibly shared with other callers.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, Supplier<T> loader) {
+        if (!enabled || readYourWrites.isPinnedToPrimary()) {
+            return loader.get();
+        }
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            coalesced.increment();
+            return (T) join(existing);
+        }
+        executed.increment();
+        try {
+            T result = loader.get();
+            call.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.kaluzny.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kaluzny.demo.domain.Automobile;
+import com.kaluzny.demo.domain.TimeOrderedUuidGenerator;
+import com.kaluzny.demo.exception.IngestionBufferIsFullException;
+import com.kaluzny.demo.exception.IngestionIsStoppedException;
+import com.kaluzny.demo.jfr.JmsPublishEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Write-behind ingestion mode ({@code automobile.ingestion.mode: write-behind}).
+ * <p>
+ * Accepted automobiles go into a bounded in-memory buffer. A single writer thread drains the buffer,
+ * inserts each batch in one transaction (group commit) and then publishes the events to {@code AutoTopic}.
+ * With the journal enabled every accepted automobile is appended to a local journal and synced before
+ * it is acknowledged; records left in the journal by a crash are inserted again on the next start.
+ * <p>
+ * A batch the database keeps rejecting for its data is split until the rejected automobiles are found,
+ * those are moved to a {@link DeadLetterFile} so the automobiles accepted after them are still saved.
+ */
+@Slf4j
+@Component
+public class WriteBehindIngestion {
+
+    private static final String INSERT = """
+            INSERT INTO automobile (id, name, color, creation_date, update_date, is_original_color, deleted)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT DO NOTHING
+            """;
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JmsTemplate jmsTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Object appendLock = new Object();
+
+    @Value("${automobile.ingestion.mode:sync}")
+    private String mode;
+
+    @Value("${automobile.ingestion.buffer-size:10000}")
+    private int bufferSize;
+
+    @Value("${automobile.ingestion.batch-size:500}")
+    private int batchSize;
+
+    @Value("${automobile.ingestion.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${automobile.ingestion.dead-letter-file:data/ingestion-dead-letters.log}")
+    private Path deadLetterPath;
+
+    @Value("${automobile.ingestion.journal.enabled:false}")
+    private boolean journalEnabled;
+
+    @Value("${automobile.ingestion.journal.directory:data/ingestion-journal}")
+    private Path journalDirectory;
+
+    @Value("${automobile.ingestion.journal.segment-bytes:67108864}")
+    private long journalSegmentBytes;
+
+    private BlockingQueue<IngestionJournal.Entry> buffer;
+    private IngestionJournal journal;
+    private DeadLetterFile deadLetters;
+    private List<IngestionJournal.Entry> recovered = List.of();
+    private Timer batchTimer;
+    private Thread writer;
+    private volatile boolean running;
+    private long nextSeq;
+
+    public WriteBehindIngestion(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                JmsTemplate jmsTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.jmsTemplate = jmsTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return "write-behind".equals(mode);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        buffer = new ArrayBlockingQueue<>(bufferSize);
+        deadLetters = new DeadLetterFile(deadLetterPath, objectMapper);
+        if (journalEnabled) {
+            journal = new IngestionJournal(journalDirectory, journalSegmentBytes, objectMapper);
+            recovered = journal.open();
+            log.info("Recovered {} automobiles from the ingestion journal", recovered.size());
+        }
+        meterRegistry.gauge("automobile.ingestion.buffer.size", buffer, BlockingQueue::size);
+        batchTimer = Timer.builder("automobile.ingestion.batch")
+                .description("Group commit of a batch of buffered automobiles")
+                .register(meterRegistry);
+
+        running = true;
+        writer = new Thread(this::writeLoop, "write-behind-writer");
+        writer.start();
+    }
+
+    /**
+     * Assigns the id and the initial version, rounds the dates down to the microseconds PostgreSQL stores,
+     * so the journal holds the creation date the replay looks the row up by, and accepts the automobile for writing.
+     *
+     * @return The id of the accepted automobile.
+     * @throws IngestionBufferIsFullException if the buffer has no room left.
+     * @throws IngestionIsStoppedException if the app is shutting down, the writer takes no more automobiles.
+     */
+    public UUID enqueue(Automobile automobile) {
+        automobile.setId(TimeOrderedUuidGenerator.next());
+        automobile.setVersion(0L);
+        automobile.setCreationDate(automobile.getCreationDate().truncatedTo(ChronoUnit.MICROS));
+        automobile.setUpdateDate(automobile.getUpdateDate().truncatedTo(ChronoUnit.MICROS));
+        long seq;
+        synchronized (appendLock) {
+            if (!running) {
+                throw new IngestionIsStoppedException();
+            }
+            if (buffer.remainingCapacity() == 0) {
+                throw new IngestionBufferIsFullException();
+            }
+            seq = journal != null ? journal.append(automobile) : ++nextSeq;
+            buffer.add(new IngestionJournal.Entry(seq, automobile));
+        }
+        if (journal != null) {
+            journal.awaitDurable(seq);
+        }
+        return automobile.getId();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException, IOException {
+        if (writer == null) {
+            return;
+        }
+        // under the lock, so every automobile accepted before is in the buffer the writer drains
+        synchronized (appendLock) {
+            running = false;
+        }
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            if (!replay(recovered)) {
+                return;
+            }
+            recovered = List.of();
+            List<IngestionJournal.Entry> batch = new ArrayList<>(batchSize);
+            while (running || !buffer.isEmpty()) {
+                IngestionJournal.Entry first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, batchSize - 1);
+                if (!write(batch, part -> {
+                    insert(part);
+                    return part;
+                }, maxAttempts)) {
+                    return;
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Inserts the journal records left over by a crash; only the ones that were not committed before
+     * are published, the others may already have been.
+     */
+    private boolean replay(List<IngestionJournal.Entry> entries) throws InterruptedException {
+        for (int from = 0; from < entries.size(); from += batchSize) {
+            List<IngestionJournal.Entry> batch = entries.subList(from, Math.min(from + batchSize, entries.size()));
+            boolean written = write(batch, part -> {
+                // the creation date range limits the look-up to the partitions of the batch
+                Set<UUID> existing = new HashSet<>(jdbcTemplate.queryForList(
+                        "SELECT id FROM automobile WHERE id = ANY(?) AND creation_date BETWEEN ? AND ?", UUID.class,
+                        part.stream().map(entry -> entry.automobile().getId()).toArray(UUID[]::new),
+                        part.stream().map(entry -> entry.automobile().getCreationDate()).min(Comparator.naturalOrder()).orElseThrow(),
+                        part.stream().map(entry -> entry.automobile().getCreationDate()).max(Comparator.naturalOrder()).orElseThrow()));
+                insert(part);
+                return part.stream().filter(entry -> !existing.contains(entry.automobile().getId())).toList();
+            }, maxAttempts);
+            if (!written) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retries a failed insert until the batch is committed, so nothing after it is committed first; meanwhile
+     * the buffer fills up and new writes are rejected. Only the insert is retried, what follows the commit
+     * runs once.
+     * <p>
+     * Once the database rejected the data of the batch {@code attemptsBeforeSplit} times, its halves are written
+     * on their own, down to single automobiles that are moved to the dead-letter file. Other failures, e.g. the
+     * database being unreachable, are retried for as long as they last.
+     *
+     * @param insert Inserts the automobiles and returns the ones to publish.
+     * @return false if the app is shutting down, the writer stops and leaves the rest in the journal.
+     */
+    private boolean write(List<IngestionJournal.Entry> batch, UnaryOperator<List<IngestionJournal.Entry>> insert,
+                          int attemptsBeforeSplit) throws InterruptedException {
+        long backoffMillis = RETRY_BACKOFF_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            List<IngestionJournal.Entry> inserted;
+            try {
+                inserted = insert.apply(batch);
+            } catch (RuntimeException e) {
+                if (!running) {
+                    log.error("Cannot write a batch of {} automobiles, stopping", batch.size(), e);
+                    return false;
+                }
+                if (attempt >= attemptsBeforeSplit && isRejected(e)) {
+                    if (batch.size() > 1) {
+                        log.warn("The database rejected a batch of {} automobiles, writing its halves on their own",
+                                batch.size());
+                        int half = batch.size() / 2;
+                        return write(batch.subList(0, half), insert, 1)
+                                && write(batch.subList(half, batch.size()), insert, 1);
+                    }
+                    if (deadLetter(batch.get(0), e)) {
+                        return true;
+                    }
+                }
+                log.error("Cannot write a batch of {} automobiles, retrying in {} ms", batch.size(), backoffMillis, e);
+                Thread.sleep(backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, MAX_RETRY_BACKOFF_MILLIS);
+                continue;
+            }
+            committed(batch, inserted);
+            return true;
+        }
+    }
+
+    /**
+     * @return true if the database refused the data itself, e.g. a constraint violation, writing it again fails again.
+     */
+    private static boolean isRejected(RuntimeException e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof DataAccessResourceFailureException);
+    }
+
+    /**
+     * Moves the automobile to the dead-letter file and drops it from the journal, nothing is published for it.
+     *
+     * @return false if it cannot be written to the file, it is retried then.
+     */
+    private boolean deadLetter(IngestionJournal.Entry entry, RuntimeException rejection) {
+        try {
+            deadLetters.append(entry, NestedExceptionUtils.getMostSpecificCause(rejection).getMessage());
+        } catch (IOException e) {
+            log.error("Cannot move automobile {} to the dead-letter file {}", entry.automobile().getId(),
+                    deadLetters.getPath(), e);
+            return false;
+        }
+        log.error("The database rejected automobile {}, moved it to the dead-letter file {}", entry.automobile().getId(),
+                deadLetters.getPath(), rejection);
+        committed(List.of(entry), List.of());
+        return true;
+    }
+
+    private void insert(List<IngestionJournal.Entry> batch) {
+        batchTimer.record(() -> transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.batchUpdate(INSERT, batch, batch.size(), (statement, entry) -> {
+                    Automobile automobile = entry.automobile();
+                    statement.setObject(1, automobile.getId());
+                    statement.setString(2, automobile.getName());
+                    statement.setString(3, automobile.getColor());
+                    statement.setTimestamp(4, Timestamp.valueOf(automobile.getCreationDate()));
+                    statement.setTimestamp(5, Timestamp.valueOf(automobile.getUpdateDate()));
+                    statement.setObject(6, automobile.getOriginalColor());
+                    statement.setObject(7, automobile.getDeleted());
+                })));
+    }
+
+    /**
+     * Publishes the events of a committed batch and drops it from the journal. The rows are committed,
+     * so a failure here is logged rather than retried: retrying would only publish duplicates, and records
+     * left in the journal are looked up before they are published again.
+     */
+    private void committed(List<IngestionJournal.Entry> batch, List<IngestionJournal.Entry> toPublish) {
+        try {
+            toPublish.forEach(entry -> JmsPublishEvent.publish(jmsTemplate, "AutoTopic", entry.automobile()));
+        } catch (RuntimeException e) {
+            log.error("Cannot publish {} automobile events", toPublish.size(), e);
+        }
+
+        if (journal != null) {
+            long committedSeq = batch.get(batch.size() - 1).seq();
+            try {
+                synchronized (appendLock) {
+                    journal.release(committedSeq);
+                }
+            } catch (RuntimeException e) {
+                log.error("Cannot release the journal up to {}, its records are looked up again on the next start",
+                        committedSeq, e);
+            }
+        }
+    }
+}
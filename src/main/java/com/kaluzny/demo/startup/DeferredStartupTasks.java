@@ -0,0 +1,80 @@
+package com.kaluzny.demo.startup;
+
+import com.kaluzny.demo.domain.Automobile;
+import com.kaluzny.demo.domain.AutomobileRepository;
+import com.kaluzny.demo.service.AutomobileReadModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Work that is not needed to serve the first request and therefore runs only once the app
+ * reports readiness, on its own thread: starting the JMS listeners, saving the sample automobile
+ * and loading the read model.
+ */
+@Slf4j
+@Component
+public class DeferredStartupTasks {
+
+    private final JmsListenerEndpointRegistry listenerRegistry;
+    private final AutomobileRepository repository;
+    private final AutomobileReadModel readModel;
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    @Value("${automobile.startup.defer-listeners:true}")
+    private boolean deferListeners;
+
+    @Value("${automobile.startup.seed-data:true}")
+    private boolean seedData;
+
+    public DeferredStartupTasks(JmsListenerEndpointRegistry listenerRegistry, AutomobileRepository repository,
+                                AutomobileReadModel readModel) {
+        this.listenerRegistry = listenerRegistry;
+        this.repository = repository;
+        this.readModel = readModel;
+    }
+
+    @EventListener
+    public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC || !started.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "deferred-startup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Every step runs even if the one before failed, so a broken seed or listener start does not leave
+     * the reads on the database for good.
+     */
+    private void run() {
+        if (deferListeners) {
+            step("start the JMS listeners", () -> {
+                listenerRegistry.start();
+                log.info("Started {} JMS listeners", listenerRegistry.getListenerContainers().size());
+            });
+        }
+        if (seedData) {
+            step("save the sample automobile", () -> repository.save(
+                    new Automobile(null, "Ford", "Green", LocalDateTime.now(), LocalDateTime.now(), true, false, null)));
+        }
+        // after the listeners start, the events of the changes committed meanwhile are replayed onto it
+        step("load the read model", readModel::rebuild);
+    }
+
+    private static void step(String description, Runnable step) {
+        try {
+            step.run();
+        } catch (RuntimeException e) {
+            log.error("Cannot {} after startup", description, e);
+        }
+    }
+}
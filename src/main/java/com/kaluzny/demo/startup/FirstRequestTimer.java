@@ -0,0 +1,54 @@
+package com.kaluzny.demo.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures time-to-first-request: the time from JVM start until the first API request
+ * has been served. Exported as the {@code application.first-request.time} gauge next to
+ * Spring Boot's {@code application.started.time} and {@code application.ready.time}.
+ */
+@Slf4j
+@Component
+public class FirstRequestTimer extends OncePerRequestFilter {
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicBoolean measured = new AtomicBoolean();
+
+    public FirstRequestTimer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return measured.get() || !request.getServletPath().startsWith("/api");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (measured.compareAndSet(false, true)) {
+                long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+                TimeGauge.builder("application.first-request.time", () -> uptimeMillis, TimeUnit.MILLISECONDS)
+                        .description("Time from JVM start until the first API request was served")
+                        .register(meterRegistry);
+                log.info("First API request served {} ms after JVM start", uptimeMillis);
+            }
+        }
+    }
+}
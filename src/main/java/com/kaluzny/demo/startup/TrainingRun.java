@@ -0,0 +1,31 @@
+package com.kaluzny.demo.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stops the app as soon as it is ready when {@code automobile.startup.training-run} is set.
+ * The {@code fast-startup} Maven profile starts the app this way once to record the classes
+ * loaded during startup into a Class Data Sharing archive.
+ * <p>
+ * A plain property check instead of a condition, because AOT processing evaluates conditions at build time.
+ */
+@Slf4j
+@Component
+public class TrainingRun {
+
+    @Value("${automobile.startup.training-run:false}")
+    private boolean trainingRun;
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        if (trainingRun) {
+            log.info("Training run finished, exiting");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+}
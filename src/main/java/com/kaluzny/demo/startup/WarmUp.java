@@ -0,0 +1,223 @@
+package com.kaluzny.demo.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kaluzny.demo.config.ReplicaRoutingDataSource;
+import com.kaluzny.demo.domain.AutomobileRepository;
+import com.kaluzny.demo.domain.TimeOrderedUuidGenerator;
+import com.kaluzny.demo.dto.AutoRequestDto;
+import com.kaluzny.demo.mapper.AutomobileMapper;
+import com.kaluzny.demo.service.AutomobileReadModel;
+import com.kaluzny.demo.service.AutomobileService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms the app up before it reports readiness, so the first requests after a deploy do not pay for cold code:
+ * opens every pooled connection, replays reads of sampled automobiles through the service and the JSON mapping on as
+ * many threads as the primary pool has connections, and the write statements in transactions that are rolled back;
+ * the updates go to an id no automobile has, so they lock no row that other instances are writing.
+ * Each thread keeps using its own connection, so with {@code iterations} of at least 5 the driver prepares
+ * every statement on the server for every connection. Optionally the read model is loaded here as well.
+ * <p>
+ * Runs as an {@link ApplicationRunner}: Spring Boot reports the app as alive but publishes readiness only after
+ * the runners, so {@code /actuator/health/readiness} stays OUT_OF_SERVICE until the warm-up is done.
+ * Exported as the {@code application.warm-up.time} gauge.
+ */
+@Slf4j
+@Component
+public class WarmUp implements ApplicationRunner {
+
+    private static final String SAMPLE = """
+            SELECT id, name, color FROM automobile
+            WHERE deleted IS FALSE AND name <> '' AND color <> ''
+            LIMIT ?""";
+
+    private final AutomobileService automobileService;
+    private final AutomobileRepository automobileRepository;
+    private final AutomobileMapper automobileMapper;
+    private final AutomobileReadModel readModel;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${automobile.warm-up.enabled:false}")
+    private boolean enabled;
+
+    @Value("${automobile.warm-up.iterations:10}")
+    private int iterations;
+
+    @Value("${automobile.warm-up.sample-size:100}")
+    private int sampleSize;
+
+    @Value("${automobile.warm-up.max-duration:30s}")
+    private Duration maxDuration;
+
+    @Value("${automobile.warm-up.preload-read-model:false}")
+    private boolean preloadReadModel;
+
+    public WarmUp(AutomobileService automobileService, AutomobileRepository automobileRepository,
+                  AutomobileMapper automobileMapper, AutomobileReadModel readModel, ObjectMapper objectMapper,
+                  Validator validator, DataSource dataSource, JdbcTemplate jdbcTemplate,
+                  TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.automobileService = automobileService;
+        this.automobileRepository = automobileRepository;
+        this.automobileMapper = automobileMapper;
+        this.readModel = readModel;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        List<HikariDataSource> pools = pools();
+        pools.forEach(WarmUp::fillPool);
+
+        if (preloadReadModel) {
+            readModel.rebuild();
+        }
+
+        List<Sample> samples = jdbcTemplate.query(SAMPLE,
+                (row, rowNum) -> new Sample(row.getObject("id", UUID.class), row.getString("name"), row.getString("color")),
+                sampleSize);
+        int threads = pools.isEmpty() ? 1 : pools.get(0).getMaximumPoolSize();
+        long deadline = started + maxDuration.toNanos();
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> new Thread(runnable, "warm-up"));
+        try {
+            List<Future<?>> replays = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int offset = thread;
+                replays.add(executor.submit(() -> {
+                    for (int i = 0; i < iterations && System.nanoTime() < deadline; i++) {
+                        Sample sample = samples.isEmpty() ? Sample.NONE : samples.get((offset + i * threads) % samples.size());
+                        try {
+                            replay(sample);
+                            calls.incrementAndGet();
+                        } catch (Exception e) {
+                            if (failures.getAndIncrement() == 0) {
+                                log.warn("Warm-up call failed, the warm-up goes on", e);
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> replay : replays) {
+                replay.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        TimeGauge.builder("application.warm-up.time", () -> elapsedMillis, TimeUnit.MILLISECONDS)
+                .description("Time the warm-up took before the app reported readiness")
+                .register(meterRegistry);
+        log.info("Warm-up replayed {} rounds of calls on {} threads, {} failed, in {} ms",
+                calls.get(), threads, failures.get(), elapsedMillis);
+    }
+
+    /**
+     * One call of every read through the service and of the JSON mapping of its result, then the request side of
+     * a save and an update, and the write statements in a transaction that is rolled back. The update and the removal
+     * run with a new time-ordered id, so they are planned like real ones but match no row.
+     */
+    private void replay(Sample sample) throws Exception {
+        if (sample.id() != null) {
+            objectMapper.writeValueAsBytes(automobileService.getAutomobileById(sample.id()));
+        }
+        objectMapper.writeValueAsBytes(automobileService.findAutomobileByName(sample.name()));
+        objectMapper.writeValueAsBytes(automobileService.findAutomobileByNameAndColor(sample.name(), sample.color()));
+        objectMapper.writeValueAsBytes(automobileService.findAutomobileByColorStartsWith(
+                sample.color().substring(0, 1) + "%", 0, 20));
+        if (sample.name().length() >= 3) {
+            objectMapper.writeValueAsBytes(automobileService.searchAutomobiles(sample.name(), 20, null));
+        }
+
+        AutoRequestDto request = objectMapper.readValue(objectMapper.writeValueAsBytes(
+                new AutoRequestDto(sample.name(), sample.color(), true)), AutoRequestDto.class);
+        validator.validate(request);
+        UUID unknownId = TimeOrderedUuidGenerator.next();
+        transactionTemplate.executeWithoutResult(status -> {
+            automobileRepository.saveAndFlush(automobileMapper.mapToEntity(request));
+            automobileRepository.updateAutomobile(request.name(), request.color(), request.originalColor(), unknownId);
+            automobileRepository.markRemoved(unknownId);
+            status.setRollbackOnly();
+        });
+    }
+
+    private List<HikariDataSource> pools() throws SQLException {
+        // the routing data source unwraps to its primary pool as well, so it is looked for first
+        if (dataSource.isWrapperFor(ReplicaRoutingDataSource.class)) {
+            return dataSource.unwrap(ReplicaRoutingDataSource.class).getPools();
+        }
+        if (dataSource.isWrapperFor(HikariDataSource.class)) {
+            return List.of(dataSource.unwrap(HikariDataSource.class));
+        }
+        return List.of();
+    }
+
+    /**
+     * Holds as many connections as the pool allows at once, so all of them are open before the first request.
+     */
+    private static void fillPool(HikariDataSource pool) {
+        List<Connection> connections = new ArrayList<>();
+        try {
+            while (connections.size() < pool.getMaximumPoolSize()) {
+                connections.add(pool.getConnection());
+            }
+        } catch (SQLException e) {
+            log.warn("Cannot open all connections of the pool {}: {}", pool.getPoolName(), e.getMessage());
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    log.warn("Cannot return a connection to the pool {}", pool.getPoolName(), e);
+                }
+            }
+        }
+        log.info("Opened {} connections of the pool {}", connections.size(), pool.getPoolName());
+    }
+
+    /**
+     * An automobile the reads are replayed with; made-up values when the table is empty.
+     */
+    private record Sample(UUID id, String name, String color) {
+
+        static final Sample NONE = new Sample(null, "Warm-up", "Warm-up");
+    }
+}
@@ -2,6 +2,7 @@ package com.kaluzny.demo.web;
 
 import com.kaluzny.demo.dto.AutoRequestDto;
 import com.kaluzny.demo.dto.AutoResponseDto;
+import com.kaluzny.demo.dto.AutoSearchPageDto;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
@@ -24,8 +25,10 @@ public interface AutomobileOpenApi {
     @Operation(summary = "Add a new Automobile", description = "Creates a new automobile entity", tags = {"Automobile"})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Automobile created"),
+            @ApiResponse(responseCode = "202", description = "Automobile accepted, it is saved shortly after (write-behind ingestion)"),
             @ApiResponse(responseCode = "400", description = "Invalid input"),
-            @ApiResponse(responseCode = "409", description = "Automobile already exists")})
+            @ApiResponse(responseCode = "409", description = "Automobile already exists"),
+            @ApiResponse(responseCode = "503", description = "Too many automobiles waiting to be saved (write-behind ingestion)")})
     ResponseEntity<UUID> saveAutomobile(@Parameter(description = "Automobile", required = true) @RequestBody AutoRequestDto automobile);
 
     @Operation(summary = "Find all Automobiles", description = "Retrieves a list of all automobiles", tags = {"Automobile"})
@@ -98,5 +101,14 @@ public interface AutomobileOpenApi {
             @Parameter(description = "Page number for pagination", required = true) @RequestParam(value = "page") int page,
             @Parameter(description = "Number of items per page", required = true) @RequestParam(value = "size") int size);
 
-
+    @Operation(summary = "Search automobiles", description = "Retrieves automobiles whose name or color contains the query "
+            + "or is similar to it, best matches first", tags = {"Automobile"})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successful operation",
+                    content = @Content(schema = @Schema(implementation = AutoSearchPageDto.class))),
+            @ApiResponse(responseCode = "400", description = "Query shorter than 3 or longer than 50 characters, or invalid cursor")})
+    AutoSearchPageDto searchAutomobiles(
+            @Parameter(description = "Text to search for in the name and color, 3 to 50 characters", required = true) @RequestParam(value = "q") String query,
+            @Parameter(description = "Maximum number of items to return, at most 100") @RequestParam(value = "limit") int limit,
+            @Parameter(description = "Cursor of the page to return, from the nextCursor of the previous page") @RequestParam(value = "cursor") String cursor);
 }
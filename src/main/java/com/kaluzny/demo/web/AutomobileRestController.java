@@ -1,11 +1,9 @@
 package com.kaluzny.demo.web;
 
-import com.kaluzny.demo.domain.Automobile;
-import com.kaluzny.demo.domain.AutomobileRepository;
 import com.kaluzny.demo.dto.AutoRequestDto;
 import com.kaluzny.demo.dto.AutoResponseDto;
+import com.kaluzny.demo.dto.AutoSearchPageDto;
 import com.kaluzny.demo.service.AutomobileService;
-import jakarta.annotation.PostConstruct;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -13,10 +11,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.UUID;
 
@@ -27,16 +23,6 @@ import java.util.UUID;
 public class AutomobileRestController implements AutomobileOpenApi {
 
     private final AutomobileService automobileService;
-    private final AutomobileRepository repository;
-
-    /**
-     * Initializes the controller with a sample automobile upon application startup.
-     */
-    @Transactional
-    @PostConstruct
-    public void init() {
-        repository.save(new Automobile(UUID.randomUUID(), "Ford", "Green", LocalDateTime.now(), LocalDateTime.now(), true, false));
-    }
 
     /**
      * Saves a new automobile and returns the ID of the saved automobile.
@@ -170,4 +156,22 @@ public class AutomobileRestController implements AutomobileOpenApi {
             @RequestParam(value = "size", defaultValue = "20") int size) {
         return automobileService.findAutomobileByColorStartsWith(colorStartsWith, page, size);
     }
+
+    /**
+     * Searches automobiles by a substring of, or a word similar to, their name or color.
+     *
+     * @param query  The text to search for.
+     * @param limit  The maximum number of automobiles to return.
+     * @param cursor The cursor of the page to return, taken from the previous page.
+     * @return A page of matching automobiles, best matches first, with the cursor of the next page.
+     */
+    @GetMapping("/automobiles/search")
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuthorize("hasRole('USER')")
+    public AutoSearchPageDto searchAutomobiles(
+            @RequestParam(value = "q") String query,
+            @RequestParam(value = "limit", defaultValue = "20") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        return automobileService.searchAutomobiles(query, limit, cursor);
+    }
 }
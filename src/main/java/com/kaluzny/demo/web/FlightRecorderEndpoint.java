@@ -0,0 +1,205 @@
+package com.kaluzny.demo.web;
+
+import com.kaluzny.demo.jfr.JmsPublishEvent;
+import com.kaluzny.demo.jfr.MessageHandledEvent;
+import com.kaluzny.demo.jfr.RepositoryQueryEvent;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /actuator/jfr} lists the Java Flight Recorder recordings of the JVM; a POST to it starts one,
+ * with the {@code default} (about 1% overhead) or the {@code profile} settings and an optional duration.
+ * {@code POST /actuator/jfr/<id>} stops a recording, {@code GET /actuator/jfr/<id>} downloads what it has recorded
+ * so far as a {@code .jfr} file and {@code DELETE /actuator/jfr/<id>} discards it.
+ * <p>
+ * Recordings take the events of the app, see {@code com.kaluzny.demo.jfr}, next to those of the JVM. With
+ * {@code automobile.jfr.continuous.enabled} a recording keeping the last {@code max-age} runs from startup on,
+ * so the data of a latency spike can be downloaded after it happened.
+ */
+@Slf4j
+@Component
+@Endpoint(id = "jfr")
+public class FlightRecorderEndpoint {
+
+    private final DataSize maxSize;
+    private final Recording continuousRecording;
+
+    public FlightRecorderEndpoint(@Value("${automobile.jfr.max-size:250MB}") DataSize maxSize,
+                                  @Value("${automobile.jfr.continuous.enabled:false}") boolean continuous,
+                                  @Value("${automobile.jfr.continuous.max-age:30m}") Duration continuousMaxAge) {
+        this.maxSize = maxSize;
+        if (continuous && FlightRecorder.isAvailable()) {
+            continuousRecording = newRecording("continuous", "default");
+            continuousRecording.setMaxAge(continuousMaxAge);
+            continuousRecording.start();
+            log.info("Started the continuous flight recording {}, keeping the last {}",
+                    continuousRecording.getId(), continuousMaxAge);
+        } else {
+            continuousRecording = null;
+        }
+    }
+
+    /**
+     * Closes the continuous recording, which would otherwise outlive the application context in the JVM.
+     */
+    @PreDestroy
+    public void closeContinuousRecording() {
+        if (continuousRecording != null && continuousRecording.getState() != RecordingState.CLOSED) {
+            continuousRecording.close();
+            log.info("Closed the continuous flight recording {}", continuousRecording.getId());
+        }
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> recordings() {
+        return recorder().getRecordings().stream().map(FlightRecorderEndpoint::describe).toList();
+    }
+
+    /**
+     * Starts a recording.
+     *
+     * @param settings {@code default} or {@code profile}, {@code default} if not set.
+     * @param duration The recording stops by itself after this long, e.g. {@code 5m}; it runs until stopped if not set.
+     */
+    @WriteOperation
+    public Map<String, Object> start(@Nullable String settings, @Nullable Duration duration) {
+        String settingsName = settings == null ? "default" : settings;
+        Recording recording = newRecording("on-demand", settingsName);
+        recording.setDuration(duration);
+        recording.start();
+        log.info("Started the flight recording {} with the {} settings", recording.getId(), settingsName);
+        return describe(recording);
+    }
+
+    @WriteOperation
+    public Map<String, Object> stop(@Selector long id) {
+        Recording recording = recording(id);
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+            log.info("Stopped the flight recording {}", id);
+        }
+        return describe(recording);
+    }
+
+    /**
+     * @return The events recorded so far, also while the recording is running.
+     */
+    @ReadOperation(produces = "application/octet-stream")
+    public Resource download(@Selector long id) throws IOException {
+        Recording recording = recording(id);
+        if (recording.getState() != RecordingState.RUNNING && recording.getState() != RecordingState.STOPPED) {
+            throw new InvalidEndpointRequestException("The recording has no data", "The recording has no data");
+        }
+        Path file = Files.createTempFile("recording-" + id + "-", ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new DeletedAfterReadResource(file);
+    }
+
+    @DeleteOperation
+    public void close(@Selector long id) {
+        recording(id).close();
+        log.info("Closed the flight recording {}", id);
+    }
+
+    private Recording newRecording(String name, String settings) {
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings);
+        } catch (IOException | ParseException e) {
+            throw new InvalidEndpointRequestException("Unknown settings " + settings, "Unknown settings");
+        }
+        Recording recording = new Recording(configuration);
+        recording.setName(name);
+        recording.setToDisk(true);
+        recording.setMaxSize(maxSize.toBytes());
+        recording.enable(RepositoryQueryEvent.class);
+        recording.enable(JmsPublishEvent.class);
+        recording.enable(MessageHandledEvent.class);
+        return recording;
+    }
+
+    private static Recording recording(long id) {
+        return recorder().getRecordings().stream()
+                .filter(recording -> recording.getId() == id)
+                .findFirst()
+                .orElseThrow(() -> new InvalidEndpointRequestException("No recording " + id, "No such recording"));
+    }
+
+    private static FlightRecorder recorder() {
+        if (!FlightRecorder.isAvailable()) {
+            throw new InvalidEndpointRequestException("Flight recorder not available", "Flight recorder not available");
+        }
+        return FlightRecorder.getFlightRecorder();
+    }
+
+    private static Map<String, Object> describe(Recording recording) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("id", recording.getId());
+        description.put("name", recording.getName());
+        description.put("state", recording.getState());
+        description.put("startTime", recording.getStartTime() == null ? null : recording.getStartTime().toString());
+        description.put("duration", recording.getDuration() == null ? null : recording.getDuration().toString());
+        description.put("maxAge", recording.getMaxAge() == null ? null : recording.getMaxAge().toString());
+        description.put("size", recording.getSize());
+        return description;
+    }
+
+    /**
+     * The dumped recording, the file is deleted once it has been sent.
+     */
+    private static final class DeletedAfterReadResource extends FileSystemResource {
+
+        DeletedAfterReadResource(Path file) {
+            super(file);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return Files.newInputStream(getFile().toPath(), StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        @Override
+        public ReadableByteChannel readableChannel() throws IOException {
+            return FileChannel.open(getFile().toPath(), StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        @Override
+        public boolean isFile() {
+            return false;
+        }
+    }
+}
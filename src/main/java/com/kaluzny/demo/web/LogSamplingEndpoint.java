@@ -0,0 +1,56 @@
+package com.kaluzny.demo.web;
+
+import com.kaluzny.demo.config.SamplingFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /actuator/logsampling} shows how many info and debug events of every sampled logger category make one
+ * that is logged, a POST of {@code {"every": 100}} to {@code /actuator/logsampling/<category>} changes it,
+ * 1 logs every event again. See {@link SamplingFilter}.
+ * <p>
+ * The categories of {@code automobile.logging.sampling} are applied at startup.
+ */
+@Slf4j
+@Component
+@Endpoint(id = "logsampling")
+public class LogSamplingEndpoint {
+
+    public LogSamplingEndpoint(@Value("${automobile.logging.sampling:}") List<String> sampling) {
+        for (String categoryAndEvery : sampling) {
+            if (!StringUtils.hasText(categoryAndEvery)) {
+                continue;
+            }
+            String[] parts = categoryAndEvery.trim().split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("automobile.logging.sampling expects category=every, got " + categoryAndEvery);
+            }
+            SamplingFilter.setEvery(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+    }
+
+    @ReadOperation
+    public Map<String, Integer> categories() {
+        return SamplingFilter.getCategories();
+    }
+
+    @WriteOperation
+    public Map<String, Integer> sample(@Selector String category, int every) {
+        if (every < 1) {
+            throw new InvalidEndpointRequestException("every must be at least 1", "every must be at least 1");
+        }
+        SamplingFilter.setEvery(category, every);
+        log.info("Logging 1 of every {} info and debug events of {}", every, category);
+        return categories();
+    }
+}
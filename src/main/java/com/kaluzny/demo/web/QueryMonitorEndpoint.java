@@ -0,0 +1,59 @@
+package com.kaluzny.demo.web;
+
+import com.kaluzny.demo.config.QueryMonitor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /actuator/queries} shows per repository method the statements it ran, their total and mean time and the
+ * rows it returned per call, the query the database spent most time on first, together with the latest alarms
+ * of the {@link QueryMonitor}: slow statements, large results and requests running many statements.
+ * {@code DELETE /actuator/queries} clears the alarms.
+ * <p>
+ * The same figures are the {@code automobile.db.*} metrics, next to Hibernate's {@code hibernate.*} statistics.
+ */
+@Slf4j
+@Component
+@Endpoint(id = "queries")
+public class QueryMonitorEndpoint {
+
+    private final QueryMonitor queryMonitor;
+
+    public QueryMonitorEndpoint(QueryMonitor queryMonitor) {
+        this.queryMonitor = queryMonitor;
+    }
+
+    @ReadOperation
+    public Map<String, Object> queries() {
+        Map<String, Object> queries = new LinkedHashMap<>();
+        queries.put("enabled", queryMonitor.isEnabled());
+        queries.put("thresholds", queryMonitor.thresholds());
+        queries.put("queries", queryMonitor.queries());
+        queries.put("alarms", alarms());
+        return queries;
+    }
+
+    @DeleteOperation
+    public void clearAlarms() {
+        queryMonitor.clearAlarms();
+        log.info("Cleared the query alarms");
+    }
+
+    private List<Map<String, Object>> alarms() {
+        return queryMonitor.alarms().stream().map(alarm -> {
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("time", alarm.time().toString());
+            description.put("type", alarm.type());
+            description.put("query", alarm.query());
+            description.put("detail", alarm.detail());
+            return description;
+        }).toList();
+    }
+}
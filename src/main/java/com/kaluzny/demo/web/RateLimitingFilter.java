@@ -0,0 +1,153 @@
+package com.kaluzny.demo.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for the automobile API.
+ * <p>
+ * Every client, identified by the principal resolved from its JWT, gets its own token bucket;
+ * a request without a token left is rejected with 429. On top of that every endpoint class has
+ * a concurrency limit, so expensive list/scan calls cannot take all database connections;
+ * a request over the limit is rejected with 503 instead of queueing.
+ * <p>
+ * The buckets of clients that stayed idle are dropped by {@link #evictIdleClients()}, called on a schedule.
+ */
+@Slf4j
+public class RateLimitingFilter extends OncePerRequestFilter {
+
+    static final String API_PATH = "/api/automobiles";
+    private static final long IDLE_CLIENT_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /**
+     * Groups endpoints by the load they put on the database.
+     */
+    public enum EndpointClass {
+        /**
+         * Single row look-ups by primary key.
+         */
+        BY_ID,
+        /**
+         * Lists, searches and bulk deletes.
+         */
+        SCAN,
+        /**
+         * Creates, updates and deletes of a single automobile.
+         */
+        WRITE
+    }
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<EndpointClass, Semaphore> concurrencyLimits = new EnumMap<>(EndpointClass.class);
+    private final long capacity;
+    private final long refillPerSecond;
+    private final MeterRegistry meterRegistry;
+
+    public RateLimitingFilter(long capacity, long refillPerSecond, Map<EndpointClass, Integer> concurrencyLimits,
+                              MeterRegistry meterRegistry) {
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.meterRegistry = meterRegistry;
+        concurrencyLimits.forEach((endpointClass, limit) ->
+                this.concurrencyLimits.put(endpointClass, new Semaphore(limit)));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getServletPath().startsWith(API_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        EndpointClass endpointClass = classify(request);
+
+        TokenBucket bucket = bucketFor(clientKey(request));
+        if (!bucket.tryConsume()) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, endpointClass, bucket.secondsUntilRefill(), "Too many requests");
+            return;
+        }
+
+        Semaphore permits = concurrencyLimits.get(endpointClass);
+        if (permits == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (!permits.tryAcquire()) {
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, endpointClass, 1, "Server is busy");
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static EndpointClass classify(HttpServletRequest request) {
+        String path = request.getServletPath();
+        boolean collection = path.equals(API_PATH) || path.equals(API_PATH + "/");
+        if (HttpMethod.GET.matches(request.getMethod())) {
+            return collection || path.startsWith(API_PATH + "/search") ? EndpointClass.SCAN : EndpointClass.BY_ID;
+        }
+        if (HttpMethod.DELETE.matches(request.getMethod()) && collection) {
+            return EndpointClass.SCAN;
+        }
+        return EndpointClass.WRITE;
+    }
+
+    static String clientKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated() && authentication.getName() != null) {
+            return "principal:" + authentication.getName();
+        }
+        return "address:" + request.getRemoteAddr();
+    }
+
+    private TokenBucket bucketFor(String clientKey) {
+        return buckets.computeIfAbsent(clientKey, key -> new TokenBucket(capacity, refillPerSecond));
+    }
+
+    /**
+     * Drops the buckets of the clients idle for a while, a returning client starts with a full bucket again,
+     * as it would have by now anyway.
+     *
+     * @return The number of clients still tracked.
+     */
+    public int evictIdleClients() {
+        buckets.values().removeIf(bucket -> bucket.isIdle(IDLE_CLIENT_NANOS));
+        return buckets.size();
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, EndpointClass endpointClass,
+                        long retryAfterSeconds, String message) throws IOException {
+        meterRegistry.counter("automobile.requests.rejected",
+                "status", String.valueOf(status.value()),
+                "endpoint", endpointClass.name()).increment();
+        log.debug("Rejected {} request with {}", endpointClass, status.value());
+
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"message\":\"" + message + "\"}");
+    }
+}
@@ -0,0 +1,45 @@
+package com.kaluzny.demo.web;
+
+import com.kaluzny.demo.service.AutomobileReadModel;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/readmodel} shows the state of the automobile read model, a POST to it rebuilds the model
+ * from the database, e.g. after events were lost.
+ */
+@Component
+@Endpoint(id = "readmodel")
+public class ReadModelEndpoint {
+
+    private final AutomobileReadModel readModel;
+
+    public ReadModelEndpoint(AutomobileReadModel readModel) {
+        this.readModel = readModel;
+    }
+
+    @ReadOperation
+    public Map<String, Object> readModel() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("enabled", readModel.isEnabled());
+        state.put("ready", readModel.isReady());
+        state.put("rebuilding", readModel.isRebuilding());
+        state.put("automobiles", readModel.count());
+        state.put("colors", readModel.countByColor());
+        return state;
+    }
+
+    /**
+     * Rebuilds the model and returns its state, reads keep being served by the old model meanwhile.
+     */
+    @WriteOperation
+    public Map<String, Object> rebuild() {
+        readModel.rebuild();
+        return readModel();
+    }
+}
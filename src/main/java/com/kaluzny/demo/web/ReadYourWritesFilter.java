@@ -0,0 +1,89 @@
+package com.kaluzny.demo.web;
+
+import com.kaluzny.demo.config.ReadYourWrites;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseCookie;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+
+/**
+ * Records the writes of every client and pins its reads to the primary database for a while after,
+ * see {@link ReadYourWrites}. Clients are identified like in {@link RateLimitingFilter}.
+ * <p>
+ * Every write also sets the {@value #WRITTEN_AT_COOKIE} cookie to the time of the write, a read carrying it
+ * is pinned on whichever instance serves it.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String WRITTEN_AT_COOKIE = "automobile-written-at";
+
+    private final ReadYourWrites readYourWrites;
+
+    public ReadYourWritesFilter(ReadYourWrites readYourWrites) {
+        this.readYourWrites = readYourWrites;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getServletPath().startsWith(RateLimitingFilter.API_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String client = RateLimitingFilter.clientKey(request);
+        boolean read = HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod());
+        if (!read) {
+            // set before the response is committed, so the window starts as the write does rather than once it is done
+            response.addHeader(HttpHeaders.SET_COOKIE, writtenAtCookie(request).toString());
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                // recorded once the write is committed, a failed write may have committed part of it
+                readYourWrites.recordWrite(client);
+            }
+            return;
+        }
+
+        if (!readYourWrites.wroteRecently(client) && !wroteRecently(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        readYourWrites.pinToPrimary();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            readYourWrites.unpin();
+        }
+    }
+
+    private ResponseCookie writtenAtCookie(HttpServletRequest request) {
+        return ResponseCookie.from(WRITTEN_AT_COOKIE, Long.toString(System.currentTimeMillis()))
+                .path(StringUtils.hasLength(request.getContextPath()) ? request.getContextPath() : "/")
+                .maxAge(readYourWrites.getWindow())
+                .httpOnly(true)
+                .sameSite("Lax")
+                .build();
+    }
+
+    private boolean wroteRecently(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, WRITTEN_AT_COOKIE);
+        if (cookie == null) {
+            return false;
+        }
+        try {
+            return readYourWrites.isWithinWindow(Long.parseLong(cookie.getValue()));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.kaluzny.demo.web;
+
+import com.kaluzny.demo.config.QueryMonitor;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Has the {@link QueryMonitor} count the statements of every API request, a request running more than
+ * {@code automobile.query-monitor.max-statements-per-request} of them raises an alarm.
+ */
+@Component
+public class StatementCountingFilter extends OncePerRequestFilter {
+
+    private final QueryMonitor queryMonitor;
+
+    public StatementCountingFilter(QueryMonitor queryMonitor) {
+        this.queryMonitor = queryMonitor;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !queryMonitor.isEnabled() || !request.getServletPath().startsWith(RateLimitingFilter.API_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        queryMonitor.startRequest();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            queryMonitor.endRequest(request.getMethod() + " " + request.getRequestURI());
+        }
+    }
+}
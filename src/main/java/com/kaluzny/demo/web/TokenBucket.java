@@ -0,0 +1,49 @@
+package com.kaluzny.demo.web;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classic token bucket: holds up to {@code capacity} tokens and refills
+ * continuously at {@code refillPerSecond}.
+ */
+class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(long capacity, long refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = (double) refillPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    synchronized boolean tryConsume() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * @return Seconds until the next token is available, at least one.
+     */
+    synchronized long secondsUntilRefill() {
+        refill();
+        return Math.max(1, (long) Math.ceil((1 - tokens) / refillPerNano / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    synchronized boolean isIdle(long idleNanos) {
+        return System.nanoTime() - lastRefill > idleNanos;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
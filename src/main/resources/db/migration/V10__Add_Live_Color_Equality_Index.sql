@@ -0,0 +1,9 @@
+-- automobile_live_color_idx is in the "C" collation for the prefix LIKE and the page order, so it cannot serve
+-- color = :color, that compares in the column collation: the color and the name and color lookups scanned every
+-- partition. This one serves both.
+CREATE INDEX automobile_live_color_name_idx ON automobile (color, name) WHERE deleted IS FALSE;
+
+COMMENT ON INDEX automobile_live_color_idx IS
+    'Color prefix pages of the live automobiles, color LIKE :prefix ORDER BY color COLLATE "C", id';
+COMMENT ON INDEX automobile_live_color_name_idx IS
+    'Color and name and color lookups of the live automobiles';
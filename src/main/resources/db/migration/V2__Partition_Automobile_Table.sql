@@ -0,0 +1,122 @@
+-- Monthly range partitions on creation_date; soft-deleted rows and cold partitions move to the archive schema
+
+ALTER TABLE automobile RENAME TO automobile_unpartitioned;
+
+CREATE TABLE automobile
+(
+    id                UUID      NOT NULL,
+    name              VARCHAR(50),
+    color             VARCHAR(50),
+    creation_date     TIMESTAMP NOT NULL,
+    update_date       TIMESTAMP,
+    is_original_color BOOLEAN DEFAULT true,
+    deleted           BOOLEAN DEFAULT false,
+    PRIMARY KEY (id, creation_date)
+) PARTITION BY RANGE (creation_date);
+
+-- Catches rows outside the monthly partitions, automobile_create_partitions moves them out again
+CREATE TABLE automobile_default PARTITION OF automobile DEFAULT;
+
+CREATE SCHEMA archive;
+
+CREATE TABLE archive.automobile_deleted
+(
+    LIKE automobile INCLUDING DEFAULTS,
+    archived_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (id, creation_date)
+);
+
+-- Creates the monthly partitions automobile_YYYY_MM from the month of from_date until months_ahead months
+-- after the current one. Rows of a new month already in the default partition are moved into it.
+CREATE FUNCTION automobile_create_partitions(from_date DATE, months_ahead INT) RETURNS INT
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    first_day      DATE := date_trunc('month', from_date);
+    last_day       DATE := date_trunc('month', now()) + make_interval(months => months_ahead);
+    partition_name TEXT;
+    created        INT  := 0;
+BEGIN
+    WHILE first_day <= last_day
+        LOOP
+            partition_name := 'automobile_' || to_char(first_day, 'YYYY_MM');
+            IF to_regclass(partition_name) IS NULL THEN
+                -- fillfactor leaves room for HOT updates, so updates do not touch the indexes
+                EXECUTE format('CREATE TABLE %I (LIKE automobile INCLUDING DEFAULTS) WITH (fillfactor = 90)',
+                               partition_name);
+                EXECUTE format('WITH moved AS (DELETE FROM automobile_default
+                                               WHERE creation_date >= %L AND creation_date < %L RETURNING *)
+                                INSERT INTO %I SELECT * FROM moved',
+                               first_day, first_day + INTERVAL '1 month', partition_name);
+                EXECUTE format('ALTER TABLE automobile ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                               partition_name, first_day, first_day + INTERVAL '1 month');
+                created := created + 1;
+            END IF;
+            first_day := first_day + INTERVAL '1 month';
+        END LOOP;
+    RETURN created;
+END;
+$$;
+
+-- Moves up to batch_size rows that were soft-deleted more than grace ago to archive.automobile_deleted
+CREATE FUNCTION automobile_archive_deleted(grace INTERVAL, batch_size INT) RETURNS INT
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    archived INT;
+BEGIN
+    WITH moved AS (
+        DELETE FROM automobile a
+            USING (SELECT id, creation_date
+                   FROM automobile
+                   WHERE deleted IS TRUE
+                     AND update_date < now() - grace
+                   LIMIT batch_size) d
+            WHERE a.id = d.id
+                AND a.creation_date = d.creation_date
+            RETURNING a.*)
+    INSERT
+    INTO archive.automobile_deleted (id, name, color, creation_date, update_date, is_original_color, deleted)
+    SELECT id, name, color, creation_date, update_date, is_original_color, deleted
+    FROM moved;
+    GET DIAGNOSTICS archived = ROW_COUNT;
+    RETURN archived;
+END;
+$$;
+
+-- Detaches the monthly partitions older than retention_months and moves them to the archive schema
+CREATE FUNCTION automobile_detach_partitions(retention_months INT) RETURNS INT
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    partition_name TEXT;
+    detached       INT := 0;
+BEGIN
+    IF retention_months < 1 THEN
+        RETURN 0;
+    END IF;
+    FOR partition_name IN
+        SELECT c.relname
+        FROM pg_inherits i
+                 JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'automobile'::regclass
+          AND c.relname ~ '^automobile_\d{4}_\d{2}$'
+          AND to_date(substr(c.relname, 12), 'YYYY_MM')
+            < date_trunc('month', now()) - make_interval(months => retention_months)
+        ORDER BY c.relname
+        LOOP
+            EXECUTE format('ALTER TABLE automobile DETACH PARTITION %I', partition_name);
+            EXECUTE format('ALTER TABLE %I SET SCHEMA archive', partition_name);
+            detached := detached + 1;
+        END LOOP;
+    RETURN detached;
+END;
+$$;
+
+INSERT INTO automobile (id, name, color, creation_date, update_date, is_original_color, deleted)
+SELECT id, name, color, COALESCE(creation_date, update_date, now()), update_date, is_original_color, deleted
+FROM automobile_unpartitioned;
+
+DROP TABLE automobile_unpartitioned;
+
+SELECT automobile_create_partitions(COALESCE((SELECT min(creation_date) FROM automobile), now())::DATE, 3);
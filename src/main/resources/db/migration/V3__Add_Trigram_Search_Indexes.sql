@@ -0,0 +1,14 @@
+-- Trigram index for substring and typo-tolerant search on name and color,
+-- created on every partition and on partitions attached later
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- The searched text; queries must use this function for the index to apply
+CREATE FUNCTION automobile_search_text(name VARCHAR, color VARCHAR) RETURNS TEXT
+    LANGUAGE sql
+    IMMUTABLE
+    PARALLEL SAFE AS
+$$
+SELECT coalesce(name, '') || ' ' || coalesce(color, '')
+$$;
+
+CREATE INDEX automobile_search_text_trgm_idx ON automobile USING gin (automobile_search_text(name, color) gin_trgm_ops);
@@ -0,0 +1,30 @@
+-- Version of every automobile, increased by every change and carried by its events on AutoTopic,
+-- so consumers apply each change once and ignore the ones older than what they have seen
+ALTER TABLE automobile ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE archive.automobile_deleted ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+CREATE OR REPLACE FUNCTION automobile_archive_deleted(grace INTERVAL, batch_size INT) RETURNS INT
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    archived INT;
+BEGIN
+    WITH moved AS (
+        DELETE FROM automobile a
+            USING (SELECT id, creation_date
+                   FROM automobile
+                   WHERE deleted IS TRUE
+                     AND update_date < now() - grace
+                   LIMIT batch_size) d
+            WHERE a.id = d.id
+                AND a.creation_date = d.creation_date
+            RETURNING a.*)
+    INSERT
+    INTO archive.automobile_deleted (id, name, color, creation_date, update_date, is_original_color, deleted, version)
+    SELECT id, name, color, creation_date, update_date, is_original_color, deleted, version
+    FROM moved;
+    GET DIAGNOSTICS archived = ROW_COUNT;
+    RETURN archived;
+END;
+$$;
@@ -0,0 +1,34 @@
+-- Lookups by id prune the monthly partitions: a UUIDv7 id embeds the millisecond it was generated at, close to the
+-- creation date of its row. Ids of other versions, e.g. the random ids of rows created before UUIDv7, carry no time
+-- and are looked up in every partition.
+
+-- The time embedded in a UUIDv7 id, in the session time zone like the creation dates the app writes; null for other ids
+CREATE FUNCTION automobile_id_time(id UUID) RETURNS TIMESTAMP
+    LANGUAGE sql
+    STABLE
+    PARALLEL SAFE AS
+$$
+SELECT CASE
+           WHEN substr(CAST(id AS TEXT), 15, 1) = '7'
+               THEN CAST(to_timestamp(CAST(CAST('x' || substr(replace(CAST(id AS TEXT), '-', ''), 1, 12) AS BIT(48)) AS BIGINT)
+                                      / 1000.0) AS TIMESTAMP)
+           END
+$$;
+
+-- The creation dates a row with the id can have; a day of margin covers clock and time zone differences between
+-- the instances that generate ids
+CREATE FUNCTION automobile_created_from(id UUID) RETURNS TIMESTAMP
+    LANGUAGE sql
+    STABLE
+    PARALLEL SAFE AS
+$$
+SELECT COALESCE(automobile_id_time(id) - INTERVAL '1 day', '-infinity')
+$$;
+
+CREATE FUNCTION automobile_created_to(id UUID) RETURNS TIMESTAMP
+    LANGUAGE sql
+    STABLE
+    PARALLEL SAFE AS
+$$
+SELECT COALESCE(automobile_id_time(id) + INTERVAL '1 day', 'infinity')
+$$;
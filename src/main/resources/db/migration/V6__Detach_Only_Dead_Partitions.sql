@@ -0,0 +1,38 @@
+-- Partitions past the retention are detached only once none of their automobiles is live: their deleted rows are
+-- moved to archive.automobile_deleted by automobile_archive_deleted, the live ones keep the partition attached
+-- and the API and the read model keep finding them
+CREATE OR REPLACE FUNCTION automobile_detach_partitions(retention_months INT) RETURNS INT
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    partition_name TEXT;
+    live           BOOLEAN;
+    detached       INT := 0;
+BEGIN
+    IF retention_months < 1 THEN
+        RETURN 0;
+    END IF;
+    FOR partition_name IN
+        SELECT c.relname
+        FROM pg_inherits i
+                 JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'automobile'::regclass
+          AND c.relname ~ '^automobile_\d{4}_\d{2}$'
+          AND to_date(substr(c.relname, 12), 'YYYY_MM')
+            < date_trunc('month', now()) - make_interval(months => retention_months)
+        ORDER BY c.relname
+        LOOP
+            -- Blocks concurrent writes until the partition is detached, so no row turns up in between
+            EXECUTE format('LOCK TABLE %I IN SHARE MODE', partition_name);
+            EXECUTE format('SELECT EXISTS (SELECT FROM %I WHERE deleted IS FALSE)', partition_name) INTO live;
+            IF live THEN
+                RAISE NOTICE 'Keeping partition % attached, it holds live automobiles', partition_name;
+                CONTINUE;
+            END IF;
+            EXECUTE format('ALTER TABLE automobile DETACH PARTITION %I', partition_name);
+            EXECUTE format('ALTER TABLE %I SET SCHEMA archive', partition_name);
+            detached := detached + 1;
+        END LOOP;
+    RETURN detached;
+END;
+$$;
@@ -0,0 +1,3 @@
+-- Color lookups and color prefix pages of the live automobiles, the pages ordered by color and id
+-- like the read model serves them
+CREATE INDEX automobile_live_color_idx ON automobile (color COLLATE "C", id) WHERE deleted IS FALSE;
@@ -0,0 +1,42 @@
+-- PartitionMaintenance detaches the partitions past the retention one per transaction: detaching takes an ACCESS
+-- EXCLUSIVE lock on automobile until the transaction ends, so a single call detaching them all kept the API waiting
+-- while it scanned the later partitions. DETACH PARTITION CONCURRENTLY is not an option next to automobile_default.
+DROP FUNCTION automobile_detach_partitions(INT);
+
+-- The monthly partitions older than retention_months, oldest first
+CREATE FUNCTION automobile_expired_partitions(retention_months INT) RETURNS SETOF TEXT
+    LANGUAGE sql
+    STABLE AS
+$$
+SELECT c.relname::TEXT
+FROM pg_inherits i
+         JOIN pg_class c ON c.oid = i.inhrelid
+WHERE i.inhparent = 'automobile'::regclass
+  AND c.relname ~ '^automobile_\d{4}_\d{2}$'
+  AND retention_months > 0
+  AND to_date(substr(c.relname, 12), 'YYYY_MM')
+    < date_trunc('month', now()) - make_interval(months => retention_months)
+ORDER BY c.relname
+$$;
+
+-- Detaches the partition and moves it to the archive schema unless it holds live automobiles, those keep it attached
+-- and the API and the read model keep finding them. Returns 1 if the partition was detached, 0 if it was kept.
+-- The partition is scanned before automobile is locked, the lock is then held for the catalog changes only.
+CREATE FUNCTION automobile_detach_partition(partition_name TEXT) RETURNS INT
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    live BOOLEAN;
+BEGIN
+    -- Blocks concurrent writes to the partition until it is detached, so no row turns up in between
+    EXECUTE format('LOCK TABLE %I IN SHARE MODE', partition_name);
+    EXECUTE format('SELECT EXISTS (SELECT FROM %I WHERE deleted IS FALSE)', partition_name) INTO live;
+    IF live THEN
+        RAISE NOTICE 'Keeping partition % attached, it holds live automobiles', partition_name;
+        RETURN 0;
+    END IF;
+    EXECUTE format('ALTER TABLE automobile DETACH PARTITION %I', partition_name);
+    EXECUTE format('ALTER TABLE %I SET SCHEMA archive', partition_name);
+    RETURN 1;
+END;
+$$;
@@ -0,0 +1,3 @@
+-- The batches of automobile_archive_deleted: soft-deleted rows by the time they were deleted at, so a batch
+-- reads the rows it moves instead of scanning every partition
+CREATE INDEX automobile_deleted_update_date_idx ON automobile (update_date) WHERE deleted IS TRUE;
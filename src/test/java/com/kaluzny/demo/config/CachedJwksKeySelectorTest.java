@@ -0,0 +1,64 @@
+package com.kaluzny.demo.config;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachedJwksKeySelectorTest {
+
+    @Test
+    void selectsTheKeysNamedByTheTokenForItsAlgorithm() throws Exception {
+        OctetSequenceKey secret = CachingJwtDecoderTest.generateKey("secret");
+        RSAKey rsa = new RSAKeyGenerator(2048).keyID("rsa").generate();
+
+        try (CachedJwksKeySelector selector = selector(new JWKSet(List.of(secret, rsa)), JWSAlgorithm.HS256, JWSAlgorithm.RS256)) {
+            assertThat(select(selector, JWSAlgorithm.HS256, "secret")).containsExactly((Key) secret.toSecretKey("HmacSHA256"));
+            assertThat(select(selector, JWSAlgorithm.RS256, "rsa")).containsExactly((Key) rsa.toRSAPublicKey());
+            assertThat(select(selector, JWSAlgorithm.RS256, "secret")).as("key of another family").isEmpty();
+            assertThat(select(selector, JWSAlgorithm.RS256, "unknown")).isEmpty();
+            assertThat(select(selector, JWSAlgorithm.RS256, null)).containsExactly((Key) rsa.toRSAPublicKey());
+            assertThat(selector.holdsKey("rsa")).isTrue();
+            assertThat(selector.holdsKey("unknown")).isFalse();
+            assertThat(selector.holdsKey(null)).isFalse();
+        }
+    }
+
+    @Test
+    void selectsNothingForTheAlgorithmsNotAccepted() throws Exception {
+        RSAKey rsa = new RSAKeyGenerator(2048).keyID("rsa").generate();
+
+        try (CachedJwksKeySelector selector = selector(new JWKSet(rsa), JWSAlgorithm.ES256)) {
+            assertThat(select(selector, JWSAlgorithm.RS256, "rsa")).isEmpty();
+        }
+    }
+
+    @Test
+    void keepsTheKeysItHasWhenTheJwksCannotBeRead() {
+        ByteArrayResource broken = new ByteArrayResource("{\"keys\": [".getBytes(StandardCharsets.UTF_8));
+
+        try (CachedJwksKeySelector selector = CachedJwksKeySelector.fromFile(broken, Set.of(JWSAlgorithm.RS256))) {
+            assertThat(select(selector, JWSAlgorithm.RS256, null)).isEmpty();
+        }
+    }
+
+    private static CachedJwksKeySelector selector(JWKSet jwkSet, JWSAlgorithm... algorithms) {
+        ByteArrayResource file = new ByteArrayResource(jwkSet.toString(false).getBytes(StandardCharsets.UTF_8));
+        return CachedJwksKeySelector.fromFile(file, Set.of(algorithms));
+    }
+
+    private static List<Key> select(CachedJwksKeySelector selector, JWSAlgorithm algorithm, String keyId) {
+        return List.copyOf(selector.selectJWSKeys(new JWSHeader.Builder(algorithm).keyID(keyId).build(), null));
+    }
+}
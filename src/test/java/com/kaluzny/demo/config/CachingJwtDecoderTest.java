@@ -0,0 +1,154 @@
+package com.kaluzny.demo.config;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.jwk.gen.OctetSequenceKeyGenerator;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingJwtDecoderTest {
+
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger verifications = new AtomicInteger();
+    private Path jwksFile;
+    private OctetSequenceKey key;
+    private CachedJwksKeySelector keySelector;
+    private JwtDecoder verifier;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        key = generateKey("key-1");
+        jwksFile = directory.resolve("jwks.json");
+        publish(key);
+        keySelector = CachedJwksKeySelector.fromFile(new FileSystemResource(jwksFile), Set.of(JWSAlgorithm.HS256));
+
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(keySelector);
+        NimbusJwtDecoder nimbus = new NimbusJwtDecoder(jwtProcessor);
+        verifier = token -> {
+            verifications.incrementAndGet();
+            return nimbus.decode(token);
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        keySelector.close();
+    }
+
+    @Test
+    void verifiesARepeatedTokenOnce() throws Exception {
+        JwtDecoder decoder = decoder(10);
+        String token = sign(key, "alice", Instant.now().plusSeconds(300));
+
+        assertThat(decoder.decode(token).getSubject()).isEqualTo("alice");
+        assertThat(decoder.decode(token).getSubject()).isEqualTo("alice");
+        assertThat(verifications).hasValue(1);
+    }
+
+    @Test
+    void rejectsTheCachedTokensOfAKeyRemovedFromTheJwks() throws Exception {
+        JwtDecoder decoder = decoder(10);
+        String token = sign(key, "alice", Instant.now().plusSeconds(300));
+        decoder.decode(token);
+
+        publish(generateKey("key-2"));
+        ReflectionTestUtils.invokeMethod(keySelector, "refresh");
+
+        assertThatThrownBy(() -> decoder.decode(token)).isInstanceOf(JwtException.class);
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void verifiesTokensWithoutKeyIdEveryTime() throws Exception {
+        JwtDecoder decoder = decoder(10);
+        String token = sign(new OctetSequenceKey.Builder(key.toSecretKey()).build(), "alice", Instant.now().plusSeconds(300));
+
+        decoder.decode(token);
+        decoder.decode(token);
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void forgetsTheLeastRecentlyUsedTokenOnceFull() throws Exception {
+        JwtDecoder decoder = decoder(2);
+        Instant expiresAt = Instant.now().plusSeconds(300);
+        String alice = sign(key, "alice", expiresAt);
+        String bob = sign(key, "bob", expiresAt);
+        String carol = sign(key, "carol", expiresAt);
+
+        decoder.decode(alice);
+        decoder.decode(bob);
+        decoder.decode(alice);
+        decoder.decode(carol);
+        assertThat(verifications).hasValue(3);
+
+        decoder.decode(alice);
+        assertThat(verifications).as("alice was used after bob, so kept").hasValue(3);
+        decoder.decode(bob);
+        assertThat(verifications).hasValue(4);
+    }
+
+    @Test
+    void rejectsACachedTokenOnceItExpires() throws Exception {
+        JwtDecoder decoder = decoder(10);
+        String token = sign(key, "alice", Instant.now().plusMillis(1_500));
+        decoder.decode(token);
+
+        Thread.sleep(1_600);
+
+        assertThatThrownBy(() -> decoder.decode(token)).isInstanceOf(JwtException.class).hasMessageContaining("expired");
+        assertThat(verifications).hasValue(1);
+    }
+
+    private JwtDecoder decoder(int maxSize) {
+        return new CachingJwtDecoder(verifier, keySelector, Duration.ZERO, maxSize);
+    }
+
+    private void publish(OctetSequenceKey jwk) throws Exception {
+        Files.writeString(jwksFile, new JWKSet(jwk).toString(false));
+    }
+
+    static OctetSequenceKey generateKey(String keyId) throws Exception {
+        return new OctetSequenceKeyGenerator(256).keyID(keyId).keyUse(KeyUse.SIGNATURE).generate();
+    }
+
+    static String sign(OctetSequenceKey jwk, String subject, Instant expiresAt) throws Exception {
+        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.HS256).keyID(jwk.getKeyID()).build();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(subject)
+                .expirationTime(Date.from(expiresAt))
+                .build();
+        SignedJWT jwt = new SignedJWT(header, claims);
+        jwt.sign(new MACSigner(jwk));
+        return jwt.serialize();
+    }
+}
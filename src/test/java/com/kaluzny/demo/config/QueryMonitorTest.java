@@ -0,0 +1,110 @@
+package com.kaluzny.demo.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryMonitorTest {
+
+    private static final String FIND_BY_ID = "AutomobileRepository.findById";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final QueryMonitor monitor = new QueryMonitor(true, Duration.ofMillis(100), 10, 3, 2,
+            Duration.ofMinutes(1), meterRegistry);
+
+    @Test
+    void raisesASlowAlarmForTheStatementsOverTheThreshold() {
+        String outer = monitor.enterQuery(FIND_BY_ID);
+        run("SELECT * FROM automobile WHERE id = ?", 20);
+        run("SELECT * FROM automobile WHERE id = ?", 150);
+        monitor.exitQuery(outer, FIND_BY_ID, 1);
+
+        assertThat(monitor.alarms()).singleElement().satisfies(alarm -> {
+            assertThat(alarm.type()).isEqualTo(QueryMonitor.SLOW);
+            assertThat(alarm.query()).isEqualTo(FIND_BY_ID);
+            assertThat(alarm.detail()).isEqualTo("took 150 ms: SELECT * FROM automobile WHERE id = ?");
+        });
+        assertThat(meterRegistry.get("automobile.db.alarms").tags("type", "slow", "query", FIND_BY_ID).counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("automobile.db.statements").tag("query", FIND_BY_ID).timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void namesTheStatementsRunOutsideARepositoryCallByTheirVerb() {
+        run("  insert into automobile (id) values (?)", 1);
+        run("with live as (select 1) select * from live", 1);
+        run("VACUUM automobile", 1);
+
+        assertThat(monitor.queries()).extracting(stats -> stats.get("query"))
+                .containsExactlyInAnyOrder("insert", "with", "other");
+    }
+
+    @Test
+    void raisesARowsAlarmForTheRepositoryCallsReturningTooManyRows() {
+        for (long rows : new long[]{5, 11, -1}) {
+            monitor.exitQuery(monitor.enterQuery(FIND_BY_ID), FIND_BY_ID, rows);
+        }
+
+        assertThat(monitor.alarms()).singleElement().satisfies(alarm -> {
+            assertThat(alarm.type()).isEqualTo(QueryMonitor.ROWS);
+            assertThat(alarm.detail()).isEqualTo("returned 11 rows");
+        });
+        assertThat(meterRegistry.get("automobile.db.rows").tag("query", FIND_BY_ID).summary().count())
+                .as("failed calls not recorded").isEqualTo(2);
+    }
+
+    @Test
+    void raisesAStatementsAlarmForTheRequestsRunningTooManyStatements() {
+        monitor.startRequest();
+        run("SELECT * FROM automobile WHERE name = ?", 1);
+        for (int i = 0; i < 3; i++) {
+            String outer = monitor.enterQuery(FIND_BY_ID);
+            run("SELECT * FROM automobile WHERE id = ?", 1);
+            monitor.exitQuery(outer, FIND_BY_ID, 1);
+        }
+        monitor.endRequest("GET /api/automobiles");
+
+        assertThat(monitor.alarms()).singleElement().satisfies(alarm -> {
+            assertThat(alarm.type()).isEqualTo(QueryMonitor.STATEMENTS);
+            assertThat(alarm.query()).as("the query run most").isEqualTo(FIND_BY_ID);
+            assertThat(alarm.detail()).isEqualTo("GET /api/automobiles ran 4 statements: select=1, " + FIND_BY_ID + "=3");
+        });
+    }
+
+    @Test
+    void leavesTheRequestsWithinTheLimitAlone() {
+        monitor.startRequest();
+        run("SELECT 1", 1);
+        monitor.endRequest("GET /api/automobiles/1");
+        monitor.endRequest("GET /api/automobiles/1");
+
+        assertThat(monitor.alarms()).isEmpty();
+        assertThat(meterRegistry.get("automobile.db.request.statements").summary().count()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsTheLatestAlarms() {
+        for (long rows = 11; rows <= 13; rows++) {
+            monitor.exitQuery(null, FIND_BY_ID, rows);
+        }
+
+        assertThat(monitor.alarms()).extracting(QueryMonitor.Alarm::detail)
+                .containsExactly("returned 13 rows", "returned 12 rows");
+        monitor.clearAlarms();
+        assertThat(monitor.alarms()).isEmpty();
+    }
+
+    private void run(String sql, long millis) {
+        ExecutionInfo execInfo = new ExecutionInfo();
+        execInfo.setElapsedTime(TimeUnit.MILLISECONDS.toNanos(millis));
+        monitor.afterQuery(execInfo, List.of(new QueryInfo(sql)));
+    }
+}
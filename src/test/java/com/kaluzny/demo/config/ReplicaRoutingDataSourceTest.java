@@ -0,0 +1,130 @@
+package com.kaluzny.demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingDataSourceTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReadYourWrites readYourWrites = new ReadYourWrites(true, Duration.ofSeconds(5));
+    private final HikariDataSource primary = mock(HikariDataSource.class);
+    private final HikariDataSource replica = mock(HikariDataSource.class);
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection replicaConnection = mock(Connection.class);
+    private final AtomicBoolean replicaReachable = new AtomicBoolean(true);
+    private ReplicaRoutingDataSource dataSource;
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        readYourWrites.unpin();
+        dataSource.close();
+    }
+
+    @Test
+    void sendsReadOnlyTransactionsToAReplicaAndTheRestToThePrimary() throws Exception {
+        route(0);
+
+        assertThat(connection(true)).isSameAs(replicaConnection);
+        assertThat(connection(false)).isSameAs(primaryConnection);
+        assertThat(meterRegistry.get("automobile.datasource.connections").tag("target", "replica").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void readsFromThePrimaryWhileTheReplicaLagsBehind() throws Exception {
+        route(5);
+
+        assertThat(connection(true)).isSameAs(primaryConnection);
+        assertThat(meterRegistry.get("automobile.datasource.replica.lag").gauge().value()).isEqualTo(5);
+    }
+
+    @Test
+    void readsFromThePrimaryWhenPinnedByAWrite() throws Exception {
+        route(0);
+
+        readYourWrites.pinToPrimary();
+        assertThat(connection(true)).isSameAs(primaryConnection);
+    }
+
+    @Test
+    void readsFromThePrimaryOnceTheReplicaCannotBeReached() throws Exception {
+        route(0);
+
+        replicaReachable.set(false);
+        assertThat(connection(true)).isSameAs(primaryConnection);
+        assertThat(meterRegistry.get("automobile.datasource.replica.lag").gauge().value()).isNaN();
+
+        replicaReachable.set(true);
+        assertThat(connection(true)).as("skipped until the next check").isSameAs(primaryConnection);
+        ReflectionTestUtils.invokeMethod(dataSource, "checkLag");
+        assertThat(connection(true)).isSameAs(replicaConnection);
+    }
+
+    /**
+     * Routes between the mocked primary and a replica lagging the given seconds behind it,
+     * once the lag is checked.
+     */
+    private void route(double lagSeconds) throws Exception {
+        Statement statement = mock(Statement.class);
+        ResultSet primaryLsn = mock(ResultSet.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(primaryConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(primaryLsn);
+        when(primaryLsn.next()).thenReturn(true);
+        when(primaryLsn.getString(1)).thenReturn("0/3000000");
+
+        PreparedStatement lagStatement = mock(PreparedStatement.class);
+        ResultSet lag = mock(ResultSet.class);
+        when(replica.getPoolName()).thenReturn("replica-1");
+        when(replica.getConnection()).thenAnswer(invocation -> {
+            if (!replicaReachable.get()) {
+                throw new SQLException("Connection refused");
+            }
+            return replicaConnection;
+        });
+        when(replicaConnection.prepareStatement(anyString())).thenReturn(lagStatement);
+        when(lagStatement.executeQuery()).thenReturn(lag);
+        when(lag.next()).thenReturn(true);
+        when(lag.getBoolean(1)).thenReturn(true);
+        when(lag.getDouble(2)).thenReturn(lagSeconds > 0 ? 1024.0 : 0);
+        when(lag.getDouble(3)).thenReturn(lagSeconds);
+
+        dataSource = new ReplicaRoutingDataSource(primary, List.of(replica), readYourWrites,
+                Duration.ofSeconds(1), Duration.ofHours(1), meterRegistry);
+        // the checks run here instead, so none overlaps the test
+        ScheduledExecutorService lagChecker = (ScheduledExecutorService) ReflectionTestUtils.getField(dataSource, "lagChecker");
+        lagChecker.shutdownNow();
+        assertThat(lagChecker.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        ReflectionTestUtils.invokeMethod(dataSource, "checkLag");
+    }
+
+    /**
+     * @return The physical connection the first statement of a transaction gets.
+     */
+    private Connection connection(boolean readOnly) throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+        return dataSource.getTargetDataSource().getConnection();
+    }
+}
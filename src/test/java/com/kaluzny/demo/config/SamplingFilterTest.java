@@ -0,0 +1,121 @@
+package com.kaluzny.demo.config;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter.Result;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SamplingFilterTest {
+
+    private static final String LISTENER = "com.kaluzny.demo.listener";
+    private static final int EVENTS = 1_000;
+    // keeps one event in two billion, close enough to none
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final SamplingFilter filter = SamplingFilter.createFilter(null);
+
+    @AfterEach
+    void clearCategories() {
+        SamplingFilter.getCategories().keySet().forEach(category -> SamplingFilter.setEvery(category, 1));
+    }
+
+    @Test
+    void keepsEveryEventOfLoggersOutsideTheCategories() {
+        SamplingFilter.setEvery(LISTENER, NONE);
+
+        assertThat(kept("com.kaluzny.demo.service.AutomobileServiceImpl", Level.INFO)).isEqualTo(EVENTS);
+        assertThat(kept("com.kaluzny.demo", Level.INFO)).isEqualTo(EVENTS);
+    }
+
+    @Test
+    void coversTheLoggersBelowACategory() {
+        SamplingFilter.setEvery(LISTENER, NONE);
+
+        assertThat(kept(LISTENER, Level.INFO)).isZero();
+        assertThat(kept(LISTENER + ".AutomobileListener", Level.DEBUG)).isZero();
+        assertThat(kept(LISTENER + "s.AutomobileListener", Level.INFO)).isEqualTo(EVENTS);
+    }
+
+    @Test
+    void samplesALoggerByItsClosestCategory() {
+        SamplingFilter.setEvery("com.kaluzny", NONE);
+        SamplingFilter.setEvery(LISTENER, 2);
+
+        assertThat(kept(LISTENER + ".AutomobileListener", Level.INFO)).isBetween(EVENTS / 4, EVENTS * 3 / 4);
+        assertThat(kept("com.kaluzny.demo.web.AutomobileController", Level.INFO)).isZero();
+    }
+
+    @Test
+    void neverDropsEventsMoreSevereThanTheLevelOfTheFilter() {
+        SamplingFilter.setEvery(LISTENER, NONE);
+
+        assertThat(kept(LISTENER, Level.WARN)).isEqualTo(EVENTS);
+        assertThat(kept(LISTENER, Level.ERROR)).isEqualTo(EVENTS);
+
+        SamplingFilter warnings = SamplingFilter.createFilter(Level.WARN);
+        assertThat(warnings.filter(event(LISTENER, Level.WARN))).isEqualTo(Result.DENY);
+        assertThat(warnings.filter(event(LISTENER, Level.ERROR))).isEqualTo(Result.NEUTRAL);
+    }
+
+    @Test
+    void appliesChangedCategoriesToLoggersSampledBefore() {
+        SamplingFilter.setEvery(LISTENER, NONE);
+        assertThat(kept(LISTENER, Level.INFO)).isZero();
+
+        SamplingFilter.setEvery(LISTENER, 1);
+
+        assertThat(kept(LISTENER, Level.INFO)).isEqualTo(EVENTS);
+        assertThat(SamplingFilter.getCategories()).isEmpty();
+    }
+
+    @Test
+    void listsTheSampledCategories() {
+        SamplingFilter.setEvery(LISTENER, 10);
+        SamplingFilter.setEvery("org.hibernate.SQL", 100);
+        SamplingFilter.setEvery("org.apache.activemq", 0);
+
+        assertThat(SamplingFilter.getCategories()).isEqualTo(Map.of(LISTENER, 10, "org.hibernate.SQL", 100));
+    }
+
+    @Test
+    void leavesEventsOfDisabledLevelsAndLevelChecksToTheLogger() {
+        SamplingFilter.setEvery(LISTENER, NONE);
+        LoggerContext context = new LoggerContext(getClass().getName());
+        try {
+            Logger logger = context.getLogger(LISTENER);
+            logger.setLevel(Level.INFO);
+
+            assertThat(filter.filter(logger, Level.DEBUG, null, "Received {}", "automobile")).isEqualTo(Result.NEUTRAL);
+            assertThat(filter.filter(logger, Level.INFO, null, (Object) null, null)).isEqualTo(Result.NEUTRAL);
+            assertThat(filter.filter(logger, Level.INFO, null, "Received {}", "automobile")).isEqualTo(Result.DENY);
+        } finally {
+            context.stop();
+        }
+    }
+
+    private int kept(String loggerName, Level level) {
+        int kept = 0;
+        for (int i = 0; i < EVENTS; i++) {
+            if (filter.filter(event(loggerName, level)) == Result.NEUTRAL) {
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    private static Log4jLogEvent event(String loggerName, Level level) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName(loggerName)
+                .setLevel(level)
+                .setMessage(new SimpleMessage("Received automobile"))
+                .build();
+    }
+}
@@ -0,0 +1,100 @@
+package com.kaluzny.demo.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeOrderedUuidGeneratorTest {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 20_000;
+
+    @Test
+    void generatesVersion7Ids() {
+        UUID id = TimeOrderedUuidGenerator.next();
+
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+    }
+
+    @Test
+    void embedsTheTimeOfGeneration() {
+        long before = System.currentTimeMillis();
+        UUID id = TimeOrderedUuidGenerator.next();
+        long after = System.currentTimeMillis();
+
+        long timestamp = id.getMostSignificantBits() >>> 16;
+        // the counter may carry into the timestamp after a burst of ids in earlier tests
+        assertThat(timestamp).isBetween(before, after + 1000);
+    }
+
+    @Test
+    void idsIncreaseStrictly() {
+        UUID previous = TimeOrderedUuidGenerator.next();
+        for (int i = 0; i < 100_000; i++) {
+            UUID id = TimeOrderedUuidGenerator.next();
+            assertThat(compareAsPostgres(id, previous)).isPositive();
+            previous = id;
+        }
+    }
+
+    @Test
+    void idsIncreaseStrictlyAndStayUniqueUnderContention() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<UUID>>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit((Callable<List<UUID>>) () -> {
+                    start.await();
+                    List<UUID> ids = new ArrayList<>(IDS_PER_THREAD);
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        ids.add(TimeOrderedUuidGenerator.next());
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+
+            Set<Long> timestampsAndCounters = new HashSet<>();
+            for (Future<List<UUID>> future : futures) {
+                List<UUID> ids = future.get(30, TimeUnit.SECONDS);
+                for (int i = 1; i < ids.size(); i++) {
+                    assertThat(compareAsPostgres(ids.get(i), ids.get(i - 1))).isPositive();
+                }
+                ids.forEach(id -> timestampsAndCounters.add(id.getMostSignificantBits()));
+            }
+            // the timestamp and counter alone are unique, whatever the random bits
+            assertThat(timestampsAndCounters).hasSize(THREADS * IDS_PER_THREAD);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void generatesIdsForHibernate() {
+        Object id = new TimeOrderedUuidGenerator().generate(null, new Automobile());
+
+        assertThat(id).isInstanceOfSatisfying(UUID.class, uuid -> assertThat(uuid.version()).isEqualTo(7));
+    }
+
+    /**
+     * PostgreSQL compares uuids byte by byte, unsigned, unlike {@link UUID#compareTo}.
+     */
+    private static int compareAsPostgres(UUID a, UUID b) {
+        int most = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return most != 0 ? most : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}
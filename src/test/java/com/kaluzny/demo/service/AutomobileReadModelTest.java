@@ -0,0 +1,244 @@
+package com.kaluzny.demo.service;
+
+import com.kaluzny.demo.config.ReadYourWrites;
+import com.kaluzny.demo.domain.Automobile;
+import com.kaluzny.demo.dto.AutoResponseDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AutomobileReadModelTest {
+
+    private static final UUID FERRARI = UUID.fromString("01a153df-4b44-77c4-996d-8d5d56cb40d6");
+    private static final UUID FIAT = UUID.fromString("01a153df-5bb8-779f-bb85-b0cc27e1f7de");
+    // random ids of rows created before UUIDv7, one of them sorts last in PostgreSQL but first in UUID#compareTo
+    private static final UUID AUDI = UUID.fromString("00000a3b-d6d6-445f-ab36-fe34d41d96ef");
+    private static final UUID BMW = UUID.fromString("fffab9b1-9e6c-469e-83a2-bcd29de0bac8");
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReadYourWrites readYourWrites = new ReadYourWrites(true, Duration.ofSeconds(5));
+    private final AutomobileReadModel readModel = readModel(true);
+
+    /**
+     * Snapshots handed out by the rebuilds in turn, each run before the rows are returned.
+     */
+    private final List<Snapshot> snapshots = new ArrayList<>();
+
+    @Test
+    void servesReadsOnceRebuilt() throws SQLException {
+        snapshot(row(FERRARI, "Ferrari", "Red", false, 1), row(FIAT, "Fiat", "Rosso", false, 0),
+                row(AUDI, "Audi", "Red", true, 3));
+        assertThat(readModel.isReady()).isFalse();
+
+        assertThat(readModel.rebuild()).isTrue();
+
+        assertThat(readModel.isReady()).isTrue();
+        assertThat(readModel.findByColor("Red")).extracting(AutoResponseDto::name).containsExactly("Ferrari");
+        assertThat(readModel.findByName("Fiat")).extracting(AutoResponseDto::id).containsExactly(FIAT);
+        assertThat(readModel.findByNameAndColor("Ferrari", "Red")).hasSize(1);
+        assertThat(readModel.findByNameAndColor("Ferrari", "Rosso")).isEmpty();
+        assertThat(readModel.count()).isEqualTo(2);
+        assertThat(readModel.countByColor()).isEqualTo(Map.of("Red", 1L, "Rosso", 1L));
+    }
+
+    @Test
+    void appliesCreatedChangedAndRemovedAutomobiles() throws SQLException {
+        snapshot();
+        readModel.rebuild();
+
+        readModel.apply(event(FERRARI, "Ferrari", "Red", false, 0));
+        readModel.apply(event(FIAT, "Fiat", "Red", false, 0));
+        assertThat(readModel.findByColor("Red")).hasSize(2);
+
+        readModel.apply(event(FERRARI, "Ferrari", "Blue", false, 1));
+        assertThat(readModel.findByColor("Red")).extracting(AutoResponseDto::id).containsExactly(FIAT);
+        assertThat(readModel.findByColor("Blue")).extracting(AutoResponseDto::id).containsExactly(FERRARI);
+
+        readModel.apply(event(FIAT, "Fiat", "Red", true, 1));
+        assertThat(readModel.findByColor("Red")).isEmpty();
+        assertThat(readModel.findByName("Fiat")).isEmpty();
+        assertThat(readModel.count()).isEqualTo(1);
+        assertThat(readModel.countByColor()).isEqualTo(Map.of("Blue", 1L));
+        assertThat(events("applied")).isEqualTo(4);
+    }
+
+    @Test
+    void leavesReadsPinnedToThePrimaryToTheDatabase() throws SQLException {
+        snapshot(row(FERRARI, "Ferrari", "Red", false, 0));
+        assertThat(readModel.servesCurrentRead()).isFalse();
+        readModel.rebuild();
+        assertThat(readModel.servesCurrentRead()).isTrue();
+
+        readYourWrites.pinToPrimary();
+        try {
+            assertThat(readModel.servesCurrentRead()).isFalse();
+            assertThat(readModel.isReady()).isTrue();
+        } finally {
+            readYourWrites.unpin();
+        }
+        assertThat(readModel.servesCurrentRead()).isTrue();
+    }
+
+    @Test
+    void ignoresEventsNotNewerThanTheVersionSeen() throws SQLException {
+        snapshot(row(FERRARI, "Ferrari", "Red", false, 2));
+        readModel.rebuild();
+
+        readModel.apply(event(FERRARI, "Ferrari", "Blue", false, 1));
+        readModel.apply(event(FERRARI, "Ferrari", "Green", false, 2));
+
+        assertThat(readModel.findByName("Ferrari")).extracting(AutoResponseDto::color).containsExactly("Red");
+        assertThat(events("stale")).isEqualTo(2);
+    }
+
+    @Test
+    void keepsRemovedAutomobilesRemovedWhenOlderEventsArrive() throws SQLException {
+        snapshot(row(FERRARI, "Ferrari", "Red", true, 3));
+        readModel.rebuild();
+
+        readModel.apply(event(FERRARI, "Ferrari", "Red", false, 2));
+
+        assertThat(readModel.findByName("Ferrari")).isEmpty();
+        assertThat(readModel.count()).isZero();
+    }
+
+    @Test
+    void replaysEventsReceivedDuringARebuildOntoTheNewModel() throws SQLException {
+        snapshot(() -> readModel.apply(event(FERRARI, "Ferrari", "Blue", false, 2)),
+                row(FERRARI, "Ferrari", "Red", false, 1), row(FIAT, "Fiat", "Red", false, 0));
+
+        readModel.rebuild();
+
+        assertThat(readModel.findByName("Ferrari")).extracting(AutoResponseDto::color).containsExactly("Blue");
+        assertThat(readModel.findByColor("Red")).extracting(AutoResponseDto::id).containsExactly(FIAT);
+    }
+
+    @Test
+    void ordersColorPrefixPagesByColorAndThenByIdLikePostgres() throws SQLException {
+        snapshot(row(BMW, "BMW", "Red", false, 0), row(FIAT, "Fiat", "Red", false, 0),
+                row(AUDI, "Audi", "Red", false, 0), row(FERRARI, "Ferrari", "Re", false, 0),
+                row(UUID.randomUUID(), "Skoda", "Blue", false, 0));
+        readModel.rebuild();
+
+        assertThat(readModel.findByColorStartsWith("Re", 0, 10)).extracting(AutoResponseDto::id)
+                .containsExactly(FERRARI, AUDI, FIAT, BMW);
+        assertThat(readModel.findByColorStartsWith("Re", 1, 2)).extracting(AutoResponseDto::id)
+                .containsExactly(FIAT, BMW);
+        assertThat(readModel.findByColor("Red")).extracting(AutoResponseDto::id)
+                .containsExactly(AUDI, FIAT, BMW);
+    }
+
+    @Test
+    void resetRebuildsTheModel() throws SQLException {
+        snapshot(row(FERRARI, "Ferrari", "Red", false, 0));
+        snapshot();
+        readModel.rebuild();
+
+        readModel.reset();
+
+        assertThat(readModel.count()).isZero();
+        assertThat(readModel.findByColor("Red")).isEmpty();
+    }
+
+    @Test
+    void resetDuringARebuildIsFollowedByAnotherRebuild() throws SQLException {
+        // the first snapshot was read before all automobiles were removed
+        snapshot(readModel::reset, row(FERRARI, "Ferrari", "Red", false, 0));
+        snapshot();
+
+        readModel.rebuild();
+
+        verify(jdbcTemplate, times(2)).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        assertThat(readModel.count()).isZero();
+    }
+
+    @Test
+    void doesNothingWhenDisabled() {
+        AutomobileReadModel disabled = readModel(false);
+
+        disabled.apply(event(FERRARI, "Ferrari", "Red", false, 0));
+
+        assertThat(disabled.rebuild()).isFalse();
+        assertThat(disabled.isReady()).isFalse();
+        assertThat(disabled.findByColor("Red")).isEmpty();
+    }
+
+    @Test
+    void extractsThePrefixOfPrefixPatternsOnly() {
+        assertThat(AutomobileReadModel.likePrefix("Re%")).isEqualTo("Re");
+        assertThat(AutomobileReadModel.likePrefix("%")).isEmpty();
+        assertThat(AutomobileReadModel.likePrefix("Red")).isNull();
+        assertThat(AutomobileReadModel.likePrefix("R_d%")).isNull();
+        assertThat(AutomobileReadModel.likePrefix("%ed%")).isNull();
+        assertThat(AutomobileReadModel.likePrefix("R\\%%")).isNull();
+        assertThat(AutomobileReadModel.likePrefix(null)).isNull();
+    }
+
+    private AutomobileReadModel readModel(boolean enabled) {
+        return new AutomobileReadModel(jdbcTemplate, mock(PlatformTransactionManager.class),
+                readYourWrites, meterRegistry, enabled);
+    }
+
+    private void snapshot(ResultSet... rows) {
+        snapshot(() -> {
+        }, rows);
+    }
+
+    private void snapshot(Runnable meanwhile, ResultSet... rows) {
+        if (snapshots.isEmpty()) {
+            doAnswer(invocation -> {
+                Snapshot snapshot = snapshots.remove(0);
+                snapshot.meanwhile().run();
+                RowCallbackHandler handler = invocation.getArgument(1);
+                for (ResultSet row : snapshot.rows()) {
+                    handler.processRow(row);
+                }
+                return null;
+            }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        }
+        snapshots.add(new Snapshot(meanwhile, List.of(rows)));
+    }
+
+    private double events(String result) {
+        return meterRegistry.get("automobile.read-model.events").tag("result", result).counter().count();
+    }
+
+    private static ResultSet row(UUID id, String name, String color, boolean deleted, long version) throws SQLException {
+        ResultSet row = mock(ResultSet.class);
+        when(row.getObject("id", UUID.class)).thenReturn(id);
+        when(row.getString("name")).thenReturn(name);
+        when(row.getString("color")).thenReturn(color);
+        when(row.getObject("is_original_color")).thenReturn(Boolean.TRUE);
+        when(row.getBoolean("deleted")).thenReturn(deleted);
+        when(row.getLong("version")).thenReturn(version);
+        return row;
+    }
+
+    private static Automobile event(UUID id, String name, String color, boolean deleted, long version) {
+        return new Automobile(id, name, color, null, null, true, deleted, version);
+    }
+
+    private record Snapshot(Runnable meanwhile, List<ResultSet> rows) {
+    }
+}
@@ -0,0 +1,151 @@
+package com.kaluzny.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kaluzny.demo.domain.Automobile;
+import com.kaluzny.demo.domain.TimeOrderedUuidGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IngestionJournalTest {
+
+    private static final long SEGMENT_BYTES = 1 << 20;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheRecordsLeftOverByTheLastRun() throws IOException {
+        Automobile first = automobile("Ferrari", LocalDateTime.of(2026, 10, 19, 9, 26, 36, 654_183_000));
+        Automobile second = automobile("Fiat", LocalDateTime.of(2026, 10, 19, 9, 26, 37, 0));
+        try (IngestionJournal journal = open()) {
+            assertThat(journal.open()).isEmpty();
+            journal.append(first);
+            long seq = journal.append(second);
+            journal.awaitDurable(seq);
+        }
+
+        try (IngestionJournal journal = open()) {
+            List<IngestionJournal.Entry> entries = journal.open();
+
+            assertThat(entries).extracting(IngestionJournal.Entry::seq).containsExactly(1L, 2L);
+            assertThat(entries.get(0).automobile())
+                    .usingRecursiveComparison()
+                    .isEqualTo(first);
+            assertThat(entries.get(1).automobile())
+                    .usingRecursiveComparison()
+                    .isEqualTo(second);
+        }
+    }
+
+    @Test
+    void keepsTheExactDatesTheRowsAreLookedUpBy() throws IOException {
+        LocalDateTime created = LocalDateTime.of(2026, 10, 19, 9, 26, 36, 654_183_000);
+        try (IngestionJournal journal = open()) {
+            journal.open();
+            journal.append(automobile("Ferrari", created));
+        }
+
+        try (IngestionJournal journal = open()) {
+            Automobile replayed = journal.open().get(0).automobile();
+
+            assertThat(replayed.getCreationDate()).isEqualTo(created);
+            assertThat(replayed.getUpdateDate()).isEqualTo(created);
+        }
+    }
+
+    @Test
+    void continuesTheSequenceAfterReplay() throws IOException {
+        try (IngestionJournal journal = open()) {
+            journal.open();
+            journal.append(automobile("Ferrari", LocalDateTime.now()));
+            journal.append(automobile("Fiat", LocalDateTime.now()));
+        }
+
+        try (IngestionJournal journal = open()) {
+            journal.open();
+
+            assertThat(journal.append(automobile("Audi", LocalDateTime.now()))).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void doesNotReplayReleasedRecords() throws IOException {
+        try (IngestionJournal journal = open()) {
+            journal.open();
+            journal.append(automobile("Ferrari", LocalDateTime.now()));
+            long seq = journal.append(automobile("Fiat", LocalDateTime.now()));
+            journal.release(seq);
+        }
+
+        try (IngestionJournal journal = open()) {
+            assertThat(journal.open()).isEmpty();
+        }
+    }
+
+    @Test
+    void deletesTheSegmentsOfReleasedRecords() throws IOException {
+        // every record fills a segment of its own
+        try (IngestionJournal journal = new IngestionJournal(directory, 1, objectMapper)) {
+            journal.open();
+            for (String name : List.of("Ferrari", "Fiat", "Audi")) {
+                journal.append(automobile(name, LocalDateTime.now()));
+            }
+            assertThat(segments()).hasSize(4);
+
+            journal.release(2);
+
+            assertThat(segments()).hasSize(2);
+        }
+
+        try (IngestionJournal journal = open()) {
+            List<IngestionJournal.Entry> entries = journal.open();
+
+            assertThat(entries).extracting(IngestionJournal.Entry::seq).containsExactly(3L);
+            assertThat(entries.get(0).automobile().getName()).isEqualTo("Audi");
+        }
+    }
+
+    @Test
+    void ignoresALineTornByACrash() throws IOException {
+        try (IngestionJournal journal = open()) {
+            journal.open();
+            journal.append(automobile("Ferrari", LocalDateTime.now()));
+        }
+        Path segment = segments().get(0);
+        Files.write(segment, "{\"seq\":2,\"automobile\":{\"id\":".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (IngestionJournal journal = open()) {
+            List<IngestionJournal.Entry> entries = journal.open();
+
+            assertThat(entries).extracting(IngestionJournal.Entry::seq).containsExactly(1L);
+        }
+    }
+
+    private IngestionJournal open() {
+        return new IngestionJournal(directory, SEGMENT_BYTES, objectMapper);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static Automobile automobile(String name, LocalDateTime created) {
+        return new Automobile(TimeOrderedUuidGenerator.next(), name, "Red", created, created, true, false, 0L);
+    }
+}
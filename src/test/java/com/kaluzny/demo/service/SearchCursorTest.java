@@ -0,0 +1,100 @@
+package com.kaluzny.demo.service;
+
+import com.kaluzny.demo.domain.AutomobileSearchHit;
+import com.kaluzny.demo.exception.InvalidSearchQueryException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SearchCursorTest {
+
+    @ParameterizedTest
+    @ValueSource(doubles = {0, 0.1, 0.30000000000000004, 1.2345678901234567, 2, Double.MIN_VALUE})
+    void roundTripsTheExactScoreAndId(double score) {
+        SearchCursor cursor = new SearchCursor(score, UUID.randomUUID());
+
+        assertThat(SearchCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void startsAfterTheLastHitOfAPage() {
+        UUID id = UUID.randomUUID();
+        AutomobileSearchHit hit = hit(id, 1.75);
+
+        SearchCursor cursor = SearchCursor.decode(SearchCursor.after(hit).encode());
+
+        assertThat(cursor.score()).isEqualTo(1.75);
+        assertThat(cursor.id()).isEqualTo(id);
+    }
+
+    @Test
+    void encodesAsUrlSafeText() {
+        String encoded = new SearchCursor(1.0 / 3, new UUID(-1L, -1L)).encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {" "})
+    void startsAtTheFirstPageWithoutACursor(String cursor) {
+        assertThat(SearchCursor.decode(cursor)).isEqualTo(SearchCursor.FIRST);
+    }
+
+    @Test
+    void sortsTheFirstPositionBeforeEveryScore() {
+        assertThat(SearchCursor.FIRST.score()).isGreaterThan(2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"not base64!", "MS41", "eCwx", "MS41LG5vdC1hLXV1aWQ"})
+    void rejectsMalformedCursors(String cursor) {
+        assertThatThrownBy(() -> SearchCursor.decode(cursor))
+                .isInstanceOf(InvalidSearchQueryException.class)
+                .hasMessage("Invalid cursor");
+    }
+
+    @Test
+    void rejectsACursorWithAnInvalidScore() {
+        String cursor = Base64.getUrlEncoder().encodeToString(("high," + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> SearchCursor.decode(cursor)).isInstanceOf(InvalidSearchQueryException.class);
+    }
+
+    private static AutomobileSearchHit hit(UUID id, double score) {
+        return new AutomobileSearchHit() {
+            @Override
+            public UUID getId() {
+                return id;
+            }
+
+            @Override
+            public String getName() {
+                return "Ferrari";
+            }
+
+            @Override
+            public String getColor() {
+                return "Red";
+            }
+
+            @Override
+            public Boolean getOriginalColor() {
+                return true;
+            }
+
+            @Override
+            public Double getScore() {
+                return score;
+            }
+        };
+    }
+}
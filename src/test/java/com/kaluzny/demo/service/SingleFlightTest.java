@@ -0,0 +1,162 @@
+package com.kaluzny.demo.service;
+
+import com.kaluzny.demo.config.ReadYourWrites;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReadYourWrites readYourWrites = new ReadYourWrites(true, Duration.ofSeconds(5));
+    private final SingleFlight singleFlight = new SingleFlight(meterRegistry, readYourWrites, true);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void identicalConcurrentReadsShareOneCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<String> loader = () -> {
+            calls.incrementAndGet();
+            entered.countDown();
+            await(release);
+            return "result";
+        };
+
+        Future<String> first = executor.submit(() -> singleFlight.execute(List.of("read", 1), loader));
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<String> second = executor.submit(() -> singleFlight.execute(List.of("read", 1), loader));
+        awaitCount("coalesced", 1);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        assertThat(calls).hasValue(1);
+        assertThat(count("executed")).isEqualTo(1);
+    }
+
+    @Test
+    void differentKeysRunTheirOwnCalls() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> singleFlight.execute(List.of("read", 1), () -> {
+            entered.countDown();
+            await(release);
+            return "first";
+        }));
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(singleFlight.execute(List.of("read", 2), () -> "second")).isEqualTo("second");
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+        assertThat(count("coalesced")).isZero();
+    }
+
+    @Test
+    void waitersGetTheFailureOfTheCall() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<String> loader = () -> {
+            entered.countDown();
+            await(release);
+            throw new IllegalStateException("database down");
+        };
+
+        Future<String> first = executor.submit(() -> singleFlight.execute("key", loader));
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<String> second = executor.submit(() -> singleFlight.execute("key", loader));
+        awaitCount("coalesced", 1);
+        release.countDown();
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS))
+                .cause().isInstanceOf(IllegalStateException.class).hasMessage("database down");
+    }
+
+    @Test
+    void completedCallsAreNotReused() {
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute("key", calls::incrementAndGet);
+        singleFlight.execute("key", calls::incrementAndGet);
+
+        assertThat(calls).hasValue(2);
+        assertThat(count("coalesced")).isZero();
+    }
+
+    @Test
+    void readsPinnedToThePrimaryNeverJoinACallInFlight() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> singleFlight.execute("key", () -> {
+            entered.countDown();
+            await(release);
+            return "replica";
+        }));
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        readYourWrites.pinToPrimary();
+        try {
+            assertThat(singleFlight.execute("key", () -> "primary")).isEqualTo("primary");
+        } finally {
+            readYourWrites.unpin();
+        }
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("replica");
+    }
+
+    @Test
+    void disabledCoalescingRunsEveryCall() {
+        SingleFlight disabled = new SingleFlight(meterRegistry, readYourWrites, false);
+        AtomicInteger calls = new AtomicInteger();
+
+        disabled.execute("key", calls::incrementAndGet);
+        disabled.execute("key", calls::incrementAndGet);
+
+        assertThat(calls).hasValue(2);
+        assertThat(count("executed")).isZero();
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("automobile.requests.coalescing").tag("result", result).counter().count();
+    }
+
+    private void awaitCount(String result, double expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count(result) < expected) {
+            assertThat(System.nanoTime()).as("%s reaching %s", result, expected).isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.kaluzny.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kaluzny.demo.domain.Automobile;
+import com.kaluzny.demo.exception.IngestionIsStoppedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessagePostProcessor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class WriteBehindIngestionTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final JmsTemplate jmsTemplate = mock(JmsTemplate.class);
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final WriteBehindIngestion ingestion = new WriteBehindIngestion(jdbcTemplate, transactionTemplate,
+            jmsTemplate, objectMapper, new SimpleMeterRegistry());
+
+    /**
+     * Names of the automobiles in the batches that were committed, in order.
+     */
+    private final List<String> saved = new CopyOnWriteArrayList<>();
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(ingestion, "mode", "write-behind");
+        ReflectionTestUtils.setField(ingestion, "bufferSize", 100);
+        ReflectionTestUtils.setField(ingestion, "batchSize", 10);
+        ReflectionTestUtils.setField(ingestion, "maxAttempts", 2);
+        ReflectionTestUtils.setField(ingestion, "deadLetterPath", directory.resolve("dead-letters.log"));
+        ReflectionTestUtils.setField(ingestion, "journalDirectory", directory.resolve("journal"));
+        ReflectionTestUtils.setField(ingestion, "journalSegmentBytes", 1L << 20);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (Boolean.TRUE.equals(ReflectionTestUtils.getField(ingestion, "running"))) {
+            ingestion.stop();
+        }
+    }
+
+    @Test
+    void savesAndPublishesTheAcceptedAutomobiles() throws Exception {
+        failWhen(batch -> null);
+        ingestion.start();
+
+        for (String name : List.of("Ferrari", "Fiat", "Audi")) {
+            ingestion.enqueue(automobile(name));
+        }
+
+        await(() -> saved.size() == 3);
+        assertThat(saved).containsExactly("Ferrari", "Fiat", "Audi");
+        verify(jmsTemplate, timeout(5_000).times(3))
+                .convertAndSend(eq("AutoTopic"), any(Automobile.class), any(MessagePostProcessor.class));
+    }
+
+    @Test
+    void movesTheAutomobilesTheDatabaseRejectsToTheDeadLetterFile() throws Exception {
+        failWhen(batch -> batch.contains("Poison")
+                ? new DataIntegrityViolationException("value too long for type character varying(50)") : null);
+        ingestion.start();
+
+        for (String name : List.of("Ferrari", "Fiat", "Poison", "Audi", "BMW", "Tesla")) {
+            ingestion.enqueue(automobile(name));
+        }
+
+        await(() -> saved.size() == 5);
+        assertThat(saved).containsExactly("Ferrari", "Fiat", "Audi", "BMW", "Tesla");
+        List<String> deadLetters = Files.readAllLines(directory.resolve("dead-letters.log"));
+        assertThat(deadLetters).hasSize(1);
+        DeadLetterFile.DeadLetter deadLetter = IngestionJournal.withExactDates(objectMapper)
+                .readValue(deadLetters.get(0), DeadLetterFile.DeadLetter.class);
+        assertThat(deadLetter.automobile().getName()).isEqualTo("Poison");
+        assertThat(deadLetter.error()).contains("value too long");
+    }
+
+    @Test
+    void keepsRetryingWhileTheDatabaseIsUnreachable() throws Exception {
+        failWhen(batch -> attempts.incrementAndGet() <= 4 ? new CannotGetJdbcConnectionException("Connection refused") : null);
+        ingestion.start();
+
+        ingestion.enqueue(automobile("Ferrari"));
+
+        await(() -> saved.size() == 1);
+        assertThat(attempts).hasValue(5);
+        assertThat(directory.resolve("dead-letters.log")).doesNotExist();
+    }
+
+    @Test
+    void dropsDeadLetteredAutomobilesFromTheJournal() throws Exception {
+        ReflectionTestUtils.setField(ingestion, "journalEnabled", true);
+        failWhen(batch -> batch.contains("Poison") ? new DataIntegrityViolationException("check constraint") : null);
+        ingestion.start();
+
+        ingestion.enqueue(automobile("Poison"));
+        ingestion.enqueue(automobile("Ferrari"));
+        await(() -> saved.contains("Ferrari"));
+        ingestion.stop();
+
+        try (IngestionJournal journal = new IngestionJournal(directory.resolve("journal"), 1L << 20, objectMapper)) {
+            assertThat(journal.open()).isEmpty();
+        }
+    }
+
+    @Test
+    void rejectsAutomobilesOnceStopped() throws Exception {
+        failWhen(batch -> null);
+        ingestion.start();
+        ingestion.stop();
+
+        assertThatThrownBy(() -> ingestion.enqueue(automobile("Ferrari"))).isInstanceOf(IngestionIsStoppedException.class);
+    }
+
+    /**
+     * Fails the inserts of the batches the function returns an exception for, saves the others.
+     */
+    @SuppressWarnings("unchecked")
+    private void failWhen(Function<List<String>, RuntimeException> failure) {
+        doAnswer(invocation -> {
+            List<String> names = new ArrayList<>();
+            for (IngestionJournal.Entry entry : (Collection<IngestionJournal.Entry>) invocation.getArgument(1)) {
+                names.add(entry.automobile().getName());
+            }
+            RuntimeException e = failure.apply(names);
+            if (e != null) {
+                throw e;
+            }
+            saved.addAll(names);
+            return new int[0][];
+        }).when(jdbcTemplate).batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    private static Automobile automobile(String name) {
+        LocalDateTime now = LocalDateTime.now();
+        return new Automobile(null, name, "Red", now, now, true, false, null);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
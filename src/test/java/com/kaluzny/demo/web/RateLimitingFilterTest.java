@@ -0,0 +1,152 @@
+package com.kaluzny.demo.web;
+
+import com.kaluzny.demo.web.RateLimitingFilter.EndpointClass;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitingFilterTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void rejectsAClientOverItsRateWith429() throws Exception {
+        RateLimitingFilter filter = filter(2, Map.of());
+        authenticate("alice");
+
+        assertThat(filter(filter, "GET", "/api/automobiles/1").getStatus()).isEqualTo(200);
+        assertThat(filter(filter, "GET", "/api/automobiles/1").getStatus()).isEqualTo(200);
+        MockHttpServletResponse rejected = filter(filter, "GET", "/api/automobiles/1");
+
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(meterRegistry.get("automobile.requests.rejected")
+                .tags("status", "429", "endpoint", "BY_ID").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void limitsEveryClientOnItsOwn() throws Exception {
+        RateLimitingFilter filter = filter(1, Map.of());
+
+        authenticate("alice");
+        assertThat(filter(filter, "GET", "/api/automobiles/1").getStatus()).isEqualTo(200);
+        assertThat(filter(filter, "GET", "/api/automobiles/1").getStatus()).isEqualTo(429);
+
+        authenticate("bob");
+        assertThat(filter(filter, "GET", "/api/automobiles/1").getStatus()).isEqualTo(200);
+
+        SecurityContextHolder.clearContext();
+        assertThat(filter(filter, "GET", "/api/automobiles/1").getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void rejectsRequestsOverTheConcurrencyLimitOfTheirEndpointClassWith503() throws Exception {
+        RateLimitingFilter filter = filter(100, Map.of(EndpointClass.SCAN, 1, EndpointClass.BY_ID, 1));
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain blocking = (request, response) -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        Future<?> scan = executor.submit(() -> {
+            filter.doFilter(request("GET", "/api/automobiles"), new MockHttpServletResponse(), blocking);
+            return null;
+        });
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(filter(filter, "GET", "/api/automobiles/search").getStatus()).isEqualTo(503);
+        assertThat(filter(filter, "DELETE", "/api/automobiles").getStatus()).isEqualTo(503);
+        assertThat(filter(filter, "GET", "/api/automobiles/1").getStatus()).isEqualTo(200);
+        assertThat(filter(filter, "POST", "/api/automobiles").getStatus()).isEqualTo(200);
+
+        release.countDown();
+        scan.get(5, TimeUnit.SECONDS);
+        assertThat(filter(filter, "GET", "/api/automobiles").getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void evictsOnlyTheClientsIdleForAWhile() throws Exception {
+        RateLimitingFilter filter = filter(1, Map.of());
+        authenticate("alice");
+        filter(filter, "GET", "/api/automobiles/1");
+        authenticate("bob");
+        filter(filter, "GET", "/api/automobiles/1");
+
+        assertThat(filter.evictIdleClients()).isEqualTo(2);
+
+        Map<String, TokenBucket> buckets = (Map<String, TokenBucket>) ReflectionTestUtils.getField(filter, "buckets");
+        ReflectionTestUtils.setField(buckets.get("principal:alice"), "lastRefill", System.nanoTime() - TimeUnit.MINUTES.toNanos(6));
+        assertThat(filter.evictIdleClients()).isEqualTo(1);
+        assertThat(buckets).containsOnlyKeys("principal:bob");
+    }
+
+    @Test
+    void leavesOtherPathsAlone() throws Exception {
+        RateLimitingFilter filter = filter(1, Map.of());
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(filter(filter, "GET", "/actuator/health").getStatus()).isEqualTo(200);
+        }
+    }
+
+    @Test
+    void identifiesClientsByPrincipalOrElseByAddress() {
+        MockHttpServletRequest request = request("GET", "/api/automobiles");
+        request.setRemoteAddr("10.0.0.1");
+        assertThat(RateLimitingFilter.clientKey(request)).isEqualTo("address:10.0.0.1");
+
+        authenticate("alice");
+        assertThat(RateLimitingFilter.clientKey(request)).isEqualTo("principal:alice");
+    }
+
+    private RateLimitingFilter filter(long capacity, Map<EndpointClass, Integer> concurrencyLimits) {
+        return new RateLimitingFilter(capacity, 1, concurrencyLimits, meterRegistry);
+    }
+
+    private static MockHttpServletResponse filter(RateLimitingFilter filter, String method, String path) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(method, path), response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setServletPath(path);
+        return request;
+    }
+
+    private static void authenticate(String name) {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken(name, null, "ROLE_USER"));
+    }
+}
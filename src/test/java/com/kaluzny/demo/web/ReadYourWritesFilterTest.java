@@ -0,0 +1,88 @@
+package com.kaluzny.demo.web;
+
+import com.kaluzny.demo.config.ReadYourWrites;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadYourWritesFilterTest {
+
+    private final ReadYourWrites readYourWrites = new ReadYourWrites(true, Duration.ofSeconds(5));
+    private final ReadYourWritesFilter filter = new ReadYourWritesFilter(readYourWrites);
+
+    @Test
+    void setsTheWrittenAtCookieOnWrites() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        long before = System.currentTimeMillis();
+
+        filter.doFilter(request("POST", "/api/automobiles"), response, (request, ignored) -> {
+        });
+
+        Cookie cookie = response.getCookie(ReadYourWritesFilter.WRITTEN_AT_COOKIE);
+        assertThat(cookie).isNotNull();
+        assertThat(Long.parseLong(cookie.getValue())).isBetween(before, System.currentTimeMillis());
+        assertThat(cookie.getMaxAge()).isEqualTo(5);
+        assertThat(cookie.isHttpOnly()).isTrue();
+    }
+
+    @Test
+    void pinsTheReadsOfAClientThatWroteThroughThisInstance() throws Exception {
+        filter.doFilter(request("PUT", "/api/automobiles/1"), new MockHttpServletResponse(), (request, response) -> {
+        });
+
+        assertThat(pinned(request("GET", "/api/automobiles/1"))).isTrue();
+    }
+
+    @Test
+    void pinsTheReadsCarryingARecentWriteFromAnotherInstance() throws Exception {
+        MockHttpServletRequest read = request("GET", "/api/automobiles/1");
+        read.setCookies(new Cookie(ReadYourWritesFilter.WRITTEN_AT_COOKIE, Long.toString(System.currentTimeMillis() - 1_000)));
+
+        assertThat(pinned(read)).isTrue();
+    }
+
+    @Test
+    void ignoresExpiredOrMalformedWriteCookies() throws Exception {
+        for (String value : new String[]{Long.toString(System.currentTimeMillis() - 10_000), "yesterday"}) {
+            MockHttpServletRequest read = request("GET", "/api/automobiles/1");
+            read.setCookies(new Cookie(ReadYourWritesFilter.WRITTEN_AT_COOKIE, value));
+
+            assertThat(pinned(read)).as(value).isFalse();
+        }
+        assertThat(pinned(request("GET", "/api/automobiles/1"))).isFalse();
+    }
+
+    @Test
+    void forgetsTheWritesOnceTheirWindowHasPassed() {
+        ReadYourWrites shortWindow = new ReadYourWrites(true, Duration.ZERO);
+        shortWindow.recordWrite("principal:alice");
+        readYourWrites.recordWrite("principal:bob");
+
+        assertThat(shortWindow.evictExpiredWrites()).isZero();
+        assertThat(readYourWrites.evictExpiredWrites()).isEqualTo(1);
+    }
+
+    /**
+     * @return Whether the read reached the controllers pinned to the primary.
+     */
+    private boolean pinned(MockHttpServletRequest read) throws Exception {
+        AtomicBoolean pinned = new AtomicBoolean();
+        FilterChain chain = (request, response) -> pinned.set(readYourWrites.isPinnedToPrimary());
+        filter.doFilter(read, new MockHttpServletResponse(), chain);
+        assertThat(readYourWrites.isPinnedToPrimary()).as("unpinned after the request").isFalse();
+        return pinned.get();
+    }
+
+    private static MockHttpServletRequest request(String method, String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setServletPath(path);
+        return request;
+    }
+}
@@ -0,0 +1,64 @@
+package com.kaluzny.demo.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    @Test
+    void allowsABurstOfItsCapacity() {
+        TokenBucket bucket = new TokenBucket(3, 1);
+
+        assertThat(bucket.tryConsume()).isTrue();
+        assertThat(bucket.tryConsume()).isTrue();
+        assertThat(bucket.tryConsume()).isTrue();
+        assertThat(bucket.tryConsume()).isFalse();
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1, 1000);
+        assertThat(bucket.tryConsume()).isTrue();
+
+        Thread.sleep(20);
+
+        assertThat(bucket.tryConsume()).isTrue();
+    }
+
+    @Test
+    void neverHoldsMoreThanItsCapacity() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(2, 1000);
+
+        Thread.sleep(20);
+
+        assertThat(bucket.tryConsume()).isTrue();
+        assertThat(bucket.tryConsume()).isTrue();
+        assertThat(bucket.tryConsume()).isFalse();
+    }
+
+    @Test
+    void reportsTheSecondsUntilTheNextToken() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertThat(bucket.secondsUntilRefill()).isEqualTo(1);
+
+        bucket.tryConsume();
+
+        assertThat(bucket.secondsUntilRefill()).isEqualTo(1);
+        assertThat(new TokenBucket(1, 1000).secondsUntilRefill()).isEqualTo(1);
+    }
+
+    @Test
+    void isIdleOnceUnusedForLongerThanGiven() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertThat(bucket.isIdle(TimeUnit.MINUTES.toNanos(5))).isFalse();
+
+        Thread.sleep(5);
+
+        assertThat(bucket.isIdle(TimeUnit.MILLISECONDS.toNanos(1))).isTrue();
+        bucket.tryConsume();
+        assertThat(bucket.isIdle(TimeUnit.MINUTES.toNanos(5))).isFalse();
+    }
+}